@@ -19,6 +19,10 @@ import io.dropwizard.client.JerseyClientBuilder;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 
+import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -26,9 +30,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.boundary.metrics.vmware.client.metrics.MetricClient;
+import com.boundary.metrics.vmware.poller.CollectionLane;
+import com.boundary.metrics.vmware.poller.CounterMetadataCache;
+import com.boundary.metrics.vmware.poller.HostSessionPool;
+import com.boundary.metrics.vmware.poller.InventoryIndex;
+import com.boundary.metrics.vmware.poller.InventoryTracker;
+import com.boundary.metrics.vmware.poller.MORCatalog;
+import com.boundary.metrics.vmware.poller.MORCatalogEntry;
+import com.boundary.metrics.vmware.poller.MORCatalogFactory;
 import com.boundary.metrics.vmware.poller.MonitoredEntity;
+import com.boundary.metrics.vmware.poller.PerfMetricAvailabilityCache;
+import com.boundary.metrics.vmware.poller.SnapshotStore;
 import com.boundary.metrics.vmware.poller.VMWareMetricCollector;
 import com.boundary.metrics.vmware.poller.VMwareClient;
+import com.boundary.metrics.vmware.poller.WatermarkStore;
 import com.boundary.metrics.vmware.resource.VMWarePerfPollerMonitor;
 import com.sun.jersey.api.client.Client;
 
@@ -82,16 +97,103 @@ public class VMwarePerfAdapter extends Application<VMwarePerfAdapterConfiguratio
         
         LOG.info("Collecting metrics from {} endpoints",configuration.getMonitoredEntities().size());
 
+        // Watermarks of every end point and lane are persisted to a single file so collection resumes after a restart
+        WatermarkStore watermarkStore = null;
+        if (configuration.getWatermarkFile() != null) {
+        	watermarkStore = new WatermarkStore(new File(configuration.getWatermarkFile()));
+        }
+
+        // Snapshots of the performance counters and inventory let collection start without fetching them after a restart
+        SnapshotStore snapshotStore = null;
+        if (configuration.getSnapshotDirectory() != null) {
+        	snapshotStore = new SnapshotStore(new File(configuration.getSnapshotDirectory()));
+        }
+
+        // End points of the same build share a single copy of their performance counters
+        CounterMetadataCache counterCache = new CounterMetadataCache();
+
         // Each of the MonitoredEntity's represent and end point where we can collect metrics from since the VMWare Infrastructure SDK/API
         // is symmetric with respect connection to vCenter or ESXi server.
         for (MonitoredEntity entity : configuration.getMonitoredEntities()) {
-        	// For each monitored entity we create a client and poller, and then pass to our scheduler
-        	// to be processed by individual threads at the polling interval
+        	// For each monitored entity we create a client and poller per collection lane, and then pass to our scheduler
+        	// to be processed by individual threads at the polling interval of the lane
         	LOG.info("Configure client and poller for: {}",entity.getName());
-        	VMwareClient connection = new VMwareClient(entity.getUri(),entity.getUsername(),entity.getPassword(),entity.getName());
-            VMWareMetricCollector collector = new VMWareMetricCollector(connection, metricsClient,entity);
-            scheduler.scheduleAtFixedRate(collector, 0, 20, TimeUnit.SECONDS);
-            environment.metrics().registerAll(collector);
+        	PerfMetricAvailabilityCache availabilityCache = null;
+
+        	// The inventory tracker has its own session since it blocks waiting for inventory changes
+        	InventoryTracker inventoryTracker = null;
+        	if (entity.isTrackInventory()) {
+        		MORCatalog catalog = MORCatalogFactory.create(new File(entity.getCatalog()));
+        		Set<String> types = new LinkedHashSet<String>();
+        		for (MORCatalogEntry entry : catalog.getCatalog()) {
+        			// Catalog entries scoped to their own inventory paths are walked by the collectors
+        			if (entry.getInventoryPaths() == null) {
+        				types.add(entry.getType());
+        			}
+        		}
+        		if (entity.isDirectHostCollection()) {
+        			// Sessions to the hosts are opened by their name
+        			types.add(InventoryIndex.HOST_SYSTEM);
+        		}
+        		if (!types.isEmpty()) {
+        			VMwareClient trackerClient = new VMwareClient(entity.getUri(),entity.getUsername(),entity.getPassword(),entity.getName());
+        			if (entity.getRequestTimeout().toMilliseconds() > 0) {
+        				// The end point holds a wait for updates open for up to its longest wait before answering
+        				trackerClient.setRequestTimeout(TimeUnit.SECONDS.toMillis(InventoryTracker.MAX_WAIT_SECONDS)
+        						+ entity.getRequestTimeout().toMilliseconds());
+        			}
+        			inventoryTracker = new InventoryTracker(trackerClient,types,
+        					entity.getInventoryPaths(),entity.getHostInventoryPaths());
+        			environment.lifecycle().manage(inventoryTracker);
+        			environment.metrics().registerAll(inventoryTracker);
+        		}
+        	}
+        	// Realtime statistics of virtual machines are queried from their host with a session per host
+        	HostSessionPool hostSessions = null;
+        	if (entity.isDirectHostCollection()) {
+        		hostSessions = new HostSessionPool(entity,counterCache);
+        		environment.lifecycle().manage(hostSessions);
+        	}
+        	for (CollectionLane lane : CollectionLane.values()) {
+        		// Each lane has its own session so that slow historical queries never hold up the realtime lane
+        		VMwareClient connection = new VMwareClient(entity.getUri(),entity.getUsername(),entity.getPassword(),entity.getName());
+        		connection.setQueryFormat(entity.getQueryFormat());
+        		connection.setRequestTimeout(entity.getRequestTimeout().toMilliseconds());
+        		if (entity.getAvailabilityCacheSize() > 0) {
+        			// Availability is keyed by sampling interval so the lanes share the cache, each loading it through its own session
+        			if (availabilityCache == null) {
+        				availabilityCache = new PerfMetricAvailabilityCache(connection.getHost(),
+        						entity.getAvailabilityScope(),
+        						entity.getAvailabilityCacheSize(),
+        						entity.getAvailabilityCacheTtl().toMilliseconds());
+        				environment.metrics().registerAll(availabilityCache);
+        			}
+        			connection.setAvailabilityCache(availabilityCache);
+        		}
+
+        		// Each end point and lane has its own pool of workers so a slow end point does not hold up the others
+        		final ExecutorService queryExecutor = environment.lifecycle().executorService("vmware-" + lane + "-query-" + entity.getName() + "-%d")
+        				.minThreads(entity.getMaxQueriesInFlight())
+        				.maxThreads(entity.getMaxQueriesInFlight())
+        				.build();
+        		VMWareMetricCollector collector = new VMWareMetricCollector(connection, metricsClient,entity,queryExecutor,lane);
+        		collector.setWatermarkStore(watermarkStore);
+        		if (snapshotStore != null) {
+        			// A snapshot is reconciled on a thread of its own so the first windows keep every worker
+        			collector.setSnapshotStore(snapshotStore,
+        					environment.lifecycle().executorService("vmware-" + lane + "-reconcile-" + entity.getName() + "-%d")
+        					.minThreads(1)
+        					.maxThreads(1)
+        					.build());
+        		}
+        		collector.setCounterMetadataCache(counterCache);
+        		if (lane == CollectionLane.realtime) {
+        			collector.setHostSessions(hostSessions);
+        		}
+        		collector.setInventoryTracker(inventoryTracker);
+        		scheduler.scheduleAtFixedRate(collector, 0, lane.getPeriod(), TimeUnit.SECONDS);
+        		environment.metrics().registerAll(collector);
+        	}
         }
     }
 }
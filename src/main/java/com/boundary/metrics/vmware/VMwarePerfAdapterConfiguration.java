@@ -79,6 +79,30 @@ public class VMwarePerfAdapterConfiguration extends Configuration {
      */
     public JerseyClientConfiguration getClient() { return client; }
 
+    @JsonProperty
+    private String watermarkFile;
+
+    /**
+     * Returns the path of the file the collection watermarks are persisted to,
+     * null if watermarks are only kept in memory
+     * @return {@link String}
+     */
+    public String getWatermarkFile() {
+        return watermarkFile;
+    }
+
+    @JsonProperty
+    private String snapshotDirectory;
+
+    /**
+     * Returns the path of the directory the performance counters and inventory of the end points
+     * are snapshot to, null if they are fetched from the end points on startup
+     * @return {@link String}
+     */
+    public String getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
     @JsonProperty
     @Valid
     @NotNull
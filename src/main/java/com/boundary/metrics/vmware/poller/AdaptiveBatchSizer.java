@@ -0,0 +1,144 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+
+/**
+ * Adjusts the number of managed objects queried per <code>queryPerf</code> call using
+ * additive increase, multiplicative decrease (AIMD).
+ * <ul>
+ * <li>A full batch that completes within the target latency and response size grows the batch size by a constant</li>
+ * <li>A batch that exceeds the target latency or response size halves the batch size</li>
+ * <li>A batch that fails with a fault halves the batch size</li>
+ * </ul>
+ * The batch size always stays between the configured minimum and maximum.
+ */
+public class AdaptiveBatchSizer {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AdaptiveBatchSizer.class);
+
+	/**
+	 * Number of managed objects added to the batch size after a successful full batch
+	 */
+	public static final int ADDITIVE_INCREASE = 8;
+
+	private final int minBatchSize;
+	private final int maxBatchSize;
+	private final long targetLatencyNanos;
+	private final long maxResponseBytes;
+	private final Meter faultMeter = new Meter();
+
+	private int batchSize;
+
+	/**
+	 * Constructor
+	 *
+	 * @param initialBatchSize Batch size to start with
+	 * @param minBatchSize Smallest batch size
+	 * @param maxBatchSize Largest batch size
+	 * @param targetLatency Longest acceptable duration of a query in milliseconds
+	 * @param maxResponseBytes Largest acceptable response in bytes, 0 to ignore response size
+	 */
+	public AdaptiveBatchSizer(int initialBatchSize,int minBatchSize,int maxBatchSize,long targetLatency,long maxResponseBytes) {
+		checkArgument(minBatchSize > 0,"minimum batch size must be positive");
+		checkArgument(minBatchSize <= maxBatchSize,"minimum batch size is larger than the maximum");
+		this.minBatchSize = minBatchSize;
+		this.maxBatchSize = maxBatchSize;
+		this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+		this.maxResponseBytes = maxResponseBytes;
+		this.batchSize = Math.max(minBatchSize,Math.min(maxBatchSize,initialBatchSize));
+	}
+
+	/**
+	 * Creates the batch sizer of the queries of a monitored entity
+	 *
+	 * @param configuration {@link MonitoredEntity}
+	 * @return {@link AdaptiveBatchSizer}
+	 */
+	public static AdaptiveBatchSizer of(MonitoredEntity configuration) {
+		return new AdaptiveBatchSizer(configuration.getQueryBatchSize(),
+				configuration.getMinQueryBatchSize(),
+				configuration.getMaxQueryBatchSize(),
+				configuration.getTargetQueryLatency().toMilliseconds(),
+				configuration.getMaxQueryResponseSize().toBytes());
+	}
+
+	/**
+	 * Returns the current number of managed objects to include in a query
+	 *
+	 * @return {@link int}
+	 */
+	public synchronized int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Records a successful query.
+	 *
+	 * @param size Number of managed objects in the query
+	 * @param latencyNanos Duration of the query in nanoseconds
+	 * @param responseBytes Size of the response in bytes, negative if unknown
+	 */
+	public synchronized void onSuccess(int size,long latencyNanos,long responseBytes) {
+		boolean tooSlow = latencyNanos > targetLatencyNanos;
+		boolean tooLarge = maxResponseBytes > 0 && responseBytes > maxResponseBytes;
+
+		if (tooSlow || tooLarge) {
+			// Only queries sized at the current batch size reflect it, this keeps concurrent
+			// queries that were started with the same batch size from shrinking it repeatedly
+			if (size >= batchSize) {
+				decrease();
+				LOG.debug("Query of {} managed objects took {}ms with {} bytes, reducing batch size to {}",
+						size,TimeUnit.NANOSECONDS.toMillis(latencyNanos),responseBytes,batchSize);
+			}
+		} else if (size >= batchSize && batchSize < maxBatchSize) {
+			batchSize = Math.min(maxBatchSize,batchSize + ADDITIVE_INCREASE);
+		}
+	}
+
+	/**
+	 * Records a query that failed with a fault.
+	 *
+	 * @param size Number of managed objects in the query
+	 */
+	public synchronized void onFault(int size) {
+		faultMeter.mark();
+		if (size >= batchSize) {
+			decrease();
+		}
+		LOG.debug("Query of {} managed objects failed, batch size is {}",size,batchSize);
+	}
+
+	/**
+	 * Returns the rate of failed queries
+	 *
+	 * @return {@link Meter}
+	 */
+	public Meter getFaultMeter() {
+		return faultMeter;
+	}
+
+	private void decrease() {
+		batchSize = Math.max(minBatchSize,batchSize / 2);
+	}
+}
@@ -0,0 +1,70 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import com.vmware.vim25.PerfProviderSummary;
+
+/**
+ * Scheduled path through which the performance statistics of a managed object type are collected.
+ * Each lane is polled by its own collector on its own cadence so that slow queries in one lane
+ * never hold up the other.
+ * <ul>
+ * <li><code>realtime</code> - 20 second statistics of hosts and virtual machines</li>
+ * <li><code>historical</code> - 300 second rollups of aggregate types such as clusters, datastores and datacenters.
+ * Rollups are computed by the end point after the interval closes, so the lane trails the
+ * current time by one period.</li>
+ * </ul>
+ */
+public enum CollectionLane {
+	realtime(20,0),
+	historical(300,300);
+
+	private final int period;
+	private final int delay;
+
+	private CollectionLane(int period,int delay) {
+		this.period = period;
+		this.delay = delay;
+	}
+
+	/**
+	 * Returns the number of seconds between polls of the lane
+	 *
+	 * @return {@link int}
+	 */
+	public int getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Returns the number of seconds the collection window of the lane trails the time at the end point
+	 *
+	 * @return {@link int}
+	 */
+	public int getDelay() {
+		return delay;
+	}
+
+	/**
+	 * Returns the lane of a managed object type whose catalog entry does not choose one:
+	 * types with real-time statistics are collected in the realtime lane, the others in the historical lane.
+	 *
+	 * @param summary {@link PerfProviderSummary} of the managed object type
+	 * @return {@link CollectionLane}
+	 */
+	public static CollectionLane of(PerfProviderSummary summary) {
+		return summary.isCurrentSupported() ? realtime : historical;
+	}
+}
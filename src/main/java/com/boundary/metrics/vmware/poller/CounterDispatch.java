@@ -0,0 +1,133 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import com.vmware.vim25.PerfCounterInfo;
+
+/**
+ * Compiled dispatch of the samples of a collected performance counter: the Boundary metric they are
+ * sent as and the scaling of their unit, resolved once from the catalog and the counter metadata so
+ * each sample only needs a lookup by counter id and its scaling.
+ */
+public class CounterDispatch {
+
+	/**
+	 * Scaling of the samples of a unit
+	 */
+	public enum Scale {
+		/**
+		 * Samples are sent as they are
+		 */
+		NONE {
+			@Override
+			public Number apply(long value) {
+				return value;
+			}
+		},
+		/**
+		 * Kilobytes are converted to bytes
+		 */
+		KILOBYTES {
+			@Override
+			public Number apply(long value) {
+				return value * 1024;
+			}
+		},
+		/**
+		 * Hundredths of a percent are converted to a decimal percent
+		 */
+		PERCENT {
+			@Override
+			public Number apply(long value) {
+				return value / 10000.0;
+			}
+		};
+
+		/**
+		 * Scales a sample
+		 *
+		 * @param value Sampled value
+		 * @return {@link Number} scaled value
+		 */
+		public abstract Number apply(long value);
+
+		/**
+		 * Returns the scaling of a unit
+		 *
+		 * @param unit Key of the unit of a performance counter
+		 * @return {@link Scale}
+		 */
+		public static Scale of(String unit) {
+			if ("kiloBytes".equalsIgnoreCase(unit)) {
+				return KILOBYTES;
+			}
+			if ("percent".equalsIgnoreCase(unit)) {
+				return PERCENT;
+			}
+			return NONE;
+		}
+	}
+
+	private final PerfCounterInfo counterInfo;
+	private final String fullName;
+	private final String metricName;
+	private final String unit;
+	private final Scale scale;
+
+	/**
+	 * Constructor
+	 *
+	 * @param counterInfo {@link PerfCounterInfo} of the performance counter
+	 * @param metricName Boundary metric the samples are sent as
+	 */
+	public CounterDispatch(PerfCounterInfo counterInfo,String metricName) {
+		this.counterInfo = counterInfo;
+		this.fullName = PerformanceCounterMetadata.toFullName(counterInfo);
+		this.metricName = metricName;
+		this.unit = counterInfo.getUnitInfo() != null ? counterInfo.getUnitInfo().getKey() : null;
+		this.scale = Scale.of(unit);
+	}
+
+	public PerfCounterInfo getCounterInfo() {
+		return counterInfo;
+	}
+
+	/**
+	 * Returns the full name of the performance counter, <code>group.name.ROLLUP</code>
+	 *
+	 * @return {@link String}
+	 */
+	public String getFullName() {
+		return fullName;
+	}
+
+	public String getMetricName() {
+		return metricName;
+	}
+
+	public String getUnit() {
+		return unit;
+	}
+
+	/**
+	 * Scales a sample of the performance counter to the unit of the metric
+	 *
+	 * @param value Sampled value
+	 * @return {@link Number} scaled value
+	 */
+	public Number scale(long value) {
+		return scale.apply(value);
+	}
+}
@@ -0,0 +1,131 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.vim25.AboutInfo;
+import com.vmware.vim25.InvalidPropertyFaultMsg;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+
+/**
+ * Process-wide cache of the performance counters of the end points, shared by the end points that run
+ * the same product build and API version since they report the same counters.
+ *
+ * The counters of a build are fetched once, from the first end point that acquires them, and are held
+ * while at least one end point references them. Each {@link #acquire(String,VMwareClient)} is matched by a
+ * {@link #release(String)} once the end point stops using the counters, such as after an upgrade.
+ */
+public class CounterMetadataCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CounterMetadataCache.class);
+
+	/**
+	 * Counters of a build and the number of end points that reference them
+	 */
+	private class Entry {
+		private PerformanceCounterMetadata metadata;
+		private int references = 0;
+
+		synchronized PerformanceCounterMetadata get(VMwareClient client) throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
+			if (metadata == null) {
+				metadata = fetch(client);
+				LOG.info("{}: Fetched {} performance counters",client.getName(),metadata.getInfoMap().size());
+			}
+			return metadata;
+		}
+	}
+
+	private final Map<String,Entry> entries = new HashMap<String,Entry>();
+
+	/**
+	 * Returns the key the counters of a connected end point are shared by
+	 *
+	 * @param client {@link VMwareClient} of the end point
+	 * @return API type, build and API version of the end point
+	 */
+	public static String getKey(VMwareClient client) {
+		AboutInfo about = client.getServiceContent().getAbout();
+		return about.getApiType() + "-" + about.getBuild() + "-" + about.getApiVersion();
+	}
+
+	/**
+	 * Returns the performance counters of a key, fetching them from the end point if no other end point holds them
+	 *
+	 * @param key Key of the end point, see {@link #getKey(VMwareClient)}
+	 * @param client {@link VMwareClient} of the end point the counters are fetched from
+	 * @return {@link PerformanceCounterMetadata}, shared and not to be modified
+	 * @throws InvalidPropertyFaultMsg Invalid property
+	 * @throws RuntimeFaultFaultMsg Runtime error
+	 */
+	public PerformanceCounterMetadata acquire(String key,VMwareClient client) throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry();
+				entries.put(key,entry);
+			}
+			entry.references++;
+		}
+		boolean acquired = false;
+		try {
+			PerformanceCounterMetadata metadata = entry.get(client);
+			acquired = true;
+			return metadata;
+		} finally {
+			if (!acquired) {
+				release(key);
+			}
+		}
+	}
+
+	/**
+	 * Fetches the performance counters of an end point
+	 */
+	PerformanceCounterMetadata fetch(VMwareClient client) throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
+		return new PerformanceCounterCollector(client).fetchPerformanceCounters();
+	}
+
+	/**
+	 * Releases the performance counters of a key, which are dropped once no end point references them
+	 *
+	 * @param key Key passed to {@link #acquire(String,VMwareClient)}
+	 */
+	public void release(String key) {
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry != null && --entry.references <= 0) {
+				entries.remove(key);
+				LOG.debug("Released performance counters of {}",key);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of builds whose counters are held
+	 *
+	 * @return {@link int}
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+}
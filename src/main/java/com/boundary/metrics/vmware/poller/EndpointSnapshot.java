@@ -0,0 +1,200 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.vmware.vim25.ElementDescription;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.PerfCounterInfo;
+import com.vmware.vim25.PerfStatsType;
+import com.vmware.vim25.PerfSummaryType;
+
+/**
+ * Compact copy of the performance counters and the running managed objects of an end point,
+ * persisted by a {@link SnapshotStore} so that collection starts without waiting for the
+ * performance counters to be fetched and the inventory to be walked after a restart.
+ * The performance counters are held once for the end point and the managed objects by lane.
+ */
+public class EndpointSnapshot {
+
+	/**
+	 * Fields of a performance counter that collection depends on
+	 */
+	public static class Counter {
+		@JsonProperty
+		private int key;
+		@JsonProperty
+		private String group;
+		@JsonProperty
+		private String name;
+		@JsonProperty
+		private String rollup;
+		@JsonProperty
+		private String stats;
+		@JsonProperty
+		private String unit;
+	}
+
+	@JsonProperty
+	private String instanceUuid;
+
+	@JsonProperty
+	private long created;
+
+	@JsonProperty
+	private List<Counter> counters = new ArrayList<Counter>();
+
+	/**
+	 * Lane to managed object type to managed object reference value to name
+	 */
+	@JsonProperty
+	private Map<String,Map<String,Map<String,String>>> inventories = new HashMap<String,Map<String,Map<String,String>>>();
+
+	public EndpointSnapshot() {
+	}
+
+	/**
+	 * Takes a snapshot of an end point
+	 * 
+	 * @param instanceUuid Unique identifier of the end point
+	 * @param counterMetadata {@link PerformanceCounterMetadata} of the end point
+	 * @param lane {@link CollectionLane} the managed objects are collected in
+	 * @param index {@link InventoryIndex} of the running managed objects, null if the inventory is not known yet
+	 * @return {@link EndpointSnapshot}
+	 */
+	public static EndpointSnapshot of(String instanceUuid,PerformanceCounterMetadata counterMetadata,
+			CollectionLane lane,InventoryIndex index) {
+		EndpointSnapshot snapshot = new EndpointSnapshot();
+		snapshot.instanceUuid = instanceUuid;
+		snapshot.created = System.currentTimeMillis();
+		for (PerfCounterInfo info : counterMetadata.getInfoMap().values()) {
+			Counter counter = new Counter();
+			counter.key = info.getKey();
+			counter.group = info.getGroupInfo().getKey();
+			counter.name = info.getNameInfo().getKey();
+			counter.rollup = info.getRollupType().value();
+			counter.stats = info.getStatsType() != null ? info.getStatsType().value() : null;
+			counter.unit = info.getUnitInfo().getKey();
+			snapshot.counters.add(counter);
+		}
+		if (index != null) {
+			Map<String,Map<String,String>> inventory = new HashMap<String,Map<String,String>>();
+			for (String type : index.getTypes()) {
+				Map<String,String> names = new HashMap<String,String>();
+				for (InventoryEntry entry : index.getEntries(type).values()) {
+					names.put(entry.getManagedObject().getValue(),entry.getName());
+				}
+				inventory.put(type,names);
+			}
+			snapshot.inventories.put(lane.name(),inventory);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Keeps the managed objects of the lanes of a previous snapshot of the end point
+	 * that this snapshot does not hold
+	 * 
+	 * @param previous {@link EndpointSnapshot} of the same end point
+	 */
+	void keepInventories(EndpointSnapshot previous) {
+		for (Map.Entry<String,Map<String,Map<String,String>>> lane : previous.inventories.entrySet()) {
+			if (!inventories.containsKey(lane.getKey())) {
+				inventories.put(lane.getKey(),lane.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Returns the unique identifier of the end point
+	 * 
+	 * @return {@link String}
+	 */
+	public String getInstanceUuid() {
+		return instanceUuid;
+	}
+
+	/**
+	 * Returns the time the snapshot was taken in milliseconds since the epoch
+	 * 
+	 * @return {@link long}
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * Rebuilds the performance counters of the snapshot
+	 * 
+	 * @return {@link PerformanceCounterMetadata}
+	 */
+	@JsonIgnore
+	public PerformanceCounterMetadata getCounterMetadata() {
+		PerformanceCounterMetadata metadata = new PerformanceCounterMetadata();
+		for (Counter counter : counters) {
+			PerfCounterInfo info = new PerfCounterInfo();
+			info.setKey(counter.key);
+			info.setGroupInfo(description(counter.group));
+			info.setNameInfo(description(counter.name));
+			info.setRollupType(PerfSummaryType.fromValue(counter.rollup));
+			if (counter.stats != null) {
+				info.setStatsType(PerfStatsType.fromValue(counter.stats));
+			}
+			info.setUnitInfo(description(counter.unit));
+			metadata.put(info);
+		}
+		return metadata;
+	}
+
+	/**
+	 * Rebuilds the inventory of a lane of the snapshot, whose managed objects were running when it was taken
+	 * 
+	 * @param lane {@link CollectionLane}
+	 * @param prefix Prefix of the sources of the managed objects, the name of the end point
+	 * @return {@link InventoryIndex}, null if the snapshot has no inventory for the lane
+	 */
+	public InventoryIndex getInventory(CollectionLane lane,String prefix) {
+		Map<String,Map<String,String>> inventory = inventories.get(lane.name());
+		if (inventory == null || inventory.isEmpty()) {
+			return null;
+		}
+		Map<ManagedObjectReference,Map<String,Object>> properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		for (Map.Entry<String,Map<String,String>> type : inventory.entrySet()) {
+			for (Map.Entry<String,String> object : type.getValue().entrySet()) {
+				ManagedObjectReference mor = new ManagedObjectReference();
+				mor.setType(type.getKey());
+				mor.setValue(object.getKey());
+				Map<String,Object> objectProperties = new HashMap<String,Object>();
+				objectProperties.put(InventoryIndex.NAME_PROPERTY,object.getValue());
+				properties.put(mor,objectProperties);
+			}
+		}
+		return InventoryIndex.of(prefix,inventory.keySet(),properties,null);
+	}
+
+	private static ElementDescription description(String key) {
+		ElementDescription description = new ElementDescription();
+		description.setKey(key);
+		description.setLabel(key);
+		description.setSummary(key);
+		return description;
+	}
+}
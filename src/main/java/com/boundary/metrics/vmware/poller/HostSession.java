@@ -0,0 +1,241 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.vmware.vim25.InvalidPropertyFaultMsg;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+
+/**
+ * Session to an ESXi host that is managed by the vCenter of a {@link VMWareMetricCollector}, used to
+ * query the real-time statistics of the virtual machines of the host directly instead of through vCenter.
+ *
+ * The managed object references of the host differ from those of vCenter, so virtual machines are
+ * matched by their instance UUID, which is the same in vCenter and on the host, and the performance counters of the host are fetched when the session is opened,
+ * or shared with the other hosts of the same build through a {@link CounterMetadataCache}.
+ * A session that fails is retried after a delay, its virtual machines are queried through vCenter meanwhile.
+ * Each host adapts the size of its query batches on its own, so a slow host does not shrink the batches of vCenter.
+ */
+public class HostSession {
+
+	private static final Logger LOG = LoggerFactory.getLogger(HostSession.class);
+
+	/**
+	 * Time a host is queried through vCenter after its session failed
+	 */
+	private static final long RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(5);
+
+	/**
+	 * Shortest time between two walks of the inventory of the host to find virtual machines it does not report
+	 */
+	private static final long MIN_REFRESH_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+	private static final String VIRTUAL_MACHINE = "VirtualMachine";
+
+	private final VMwareClient client;
+	private final CounterMetadataCache counterCache;
+	private final AdaptiveBatchSizer batchSizer;
+	// Key of the shared performance counters held by the session
+	private String counterKey;
+	private VMWareMetadata metadata;
+	private MORCatalog catalog;
+	private InventoryIndex inventory;
+	private Map<String,ManagedObjectReference> virtualMachines = new HashMap<String,ManagedObjectReference>();
+	private volatile long failedUntil = 0;
+	private long refreshed = 0;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param client {@link VMwareClient} of the host
+	 * @param batchSizer {@link AdaptiveBatchSizer} of the queries of the host
+	 */
+	public HostSession(VMwareClient client,AdaptiveBatchSizer batchSizer) {
+		this(client,null,batchSizer);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param client {@link VMwareClient} of the host
+	 * @param counterCache {@link CounterMetadataCache} the performance counters are shared through, null to fetch those of the host
+	 * @param batchSizer {@link AdaptiveBatchSizer} of the queries of the host
+	 */
+	public HostSession(VMwareClient client,CounterMetadataCache counterCache,AdaptiveBatchSizer batchSizer) {
+		this.client = client;
+		this.counterCache = counterCache;
+		this.batchSizer = batchSizer;
+	}
+
+	/**
+	 * Returns the client of the host
+	 * 
+	 * @return {@link VMwareClient}
+	 */
+	public VMwareClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Returns the batch sizer of the queries of the host
+	 * 
+	 * @return {@link AdaptiveBatchSizer}
+	 */
+	public AdaptiveBatchSizer getBatchSizer() {
+		return batchSizer;
+	}
+
+	/**
+	 * Returns false while the session is waiting to be retried after a failure
+	 * 
+	 * @return {@link boolean}
+	 */
+	public boolean isAvailable() {
+		return System.currentTimeMillis() >= failedUntil;
+	}
+
+	/**
+	 * Marks the session as failed, it is reopened once the retry delay has elapsed
+	 * 
+	 * @param e Cause of the failure
+	 */
+	public synchronized void fail(Exception e) {
+		LOG.warn("{}: Host session failed, querying its virtual machines through vCenter for {}s",
+				client.getName(),TimeUnit.MILLISECONDS.toSeconds(RETRY_DELAY_MS),e);
+		failedUntil = System.currentTimeMillis() + RETRY_DELAY_MS;
+		metadata = null;
+		inventory = null;
+		virtualMachines = new HashMap<String,ManagedObjectReference>();
+		try {
+			client.disconnect();
+		} catch (Exception d) {
+			LOG.debug("{}: Unable to disconnect host session",client.getName(),d);
+		}
+	}
+
+	/**
+	 * Returns the metadata of the host for a catalog, logging in and fetching the performance counters of the host
+	 * when the session is opened
+	 * 
+	 * @param catalog {@link MORCatalog} of the collector
+	 * @return {@link VMWareMetadata}
+	 * @throws RuntimeFaultFaultMsg Runtime error
+	 * @throws InvalidPropertyFaultMsg Invalid property
+	 */
+	public synchronized VMWareMetadata getMetadata(MORCatalog catalog) throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
+		if (client.getUserSession() == null) {
+			client.connect();
+			if (client.getUserSession() == null) {
+				throw new IllegalStateException("Unable to connect to " + client.getHost());
+			}
+			metadata = null;
+		}
+		if (metadata == null || this.catalog != catalog) {
+			PerformanceCounterMetadata counters;
+			if (counterCache != null) {
+				// Hosts of the same build share their performance counters
+				String key = CounterMetadataCache.getKey(client);
+				counters = counterCache.acquire(key,client);
+				if (counterKey != null) {
+					counterCache.release(counterKey);
+				}
+				counterKey = key;
+			} else {
+				counters = new PerformanceCounterCollector(client).fetchPerformanceCounters();
+				LOG.info("{}: Fetched {} performance counters from host",client.getName(),counters.getInfoMap().size());
+			}
+			metadata = new VMWareMetadata(counters,catalog.getMetrics(),catalog.getInstanceFilters());
+			this.catalog = catalog;
+		}
+		return metadata;
+	}
+
+	/**
+	 * Resolves the virtual machines of vCenter to the managed objects of the host by their instance UUID.
+	 * The inventory of the host is walked again when one of them is not known yet, at most once a minute.
+	 * Virtual machines whose instance UUID is not known are left to vCenter.
+	 * 
+	 * @param entries {@link InventoryEntry}s of the virtual machines in vCenter
+	 * @param unresolved {@link List} receiving the entries of the virtual machines the host does not report
+	 * @return {@link Map} of host managed object to source, without the virtual machines that are not on the host
+	 * @throws RuntimeFaultFaultMsg Runtime error
+	 * @throws InvalidPropertyFaultMsg Invalid property
+	 */
+	public synchronized Map<ManagedObjectReference,String> resolve(List<InventoryEntry> entries,List<InventoryEntry> unresolved)
+			throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+		for (InventoryEntry entry : entries) {
+			if (entry.getInstanceUuid() != null && !virtualMachines.containsKey(entry.getInstanceUuid())) {
+				if (inventory == null || System.currentTimeMillis() - refreshed >= MIN_REFRESH_INTERVAL_MS) {
+					refresh();
+				}
+				break;
+			}
+		}
+		Map<ManagedObjectReference,String> sources = new LinkedHashMap<ManagedObjectReference,String>();
+		for (InventoryEntry entry : entries) {
+			ManagedObjectReference mor = entry.getInstanceUuid() != null ? virtualMachines.get(entry.getInstanceUuid()) : null;
+			if (mor != null) {
+				sources.put(mor,entry.getSource());
+			} else {
+				LOG.debug("{}: Virtual machine {} is not on the host",client.getName(),entry.getName());
+				unresolved.add(entry);
+			}
+		}
+		return sources;
+	}
+
+	private void refresh() throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+		refreshed = System.currentTimeMillis();
+		inventory = getHostInventory(inventory);
+		Map<String,ManagedObjectReference> byUuid = new HashMap<String,ManagedObjectReference>();
+		for (InventoryEntry entry : inventory.getEntries(VIRTUAL_MACHINE).values()) {
+			if (entry.getInstanceUuid() != null) {
+				byUuid.put(entry.getInstanceUuid(),entry.getManagedObject());
+			}
+		}
+		virtualMachines = byUuid;
+		LOG.debug("{}: Host runs {} virtual machines",client.getName(),byUuid.size());
+	}
+
+	/**
+	 * Walks the virtual machines of the host
+	 */
+	InventoryIndex getHostInventory(InventoryIndex previous) throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+		return client.getInventory(ImmutableList.of(VIRTUAL_MACHINE),previous);
+	}
+
+	/**
+	 * Logs out of the host
+	 */
+	public synchronized void close() {
+		if (client.getUserSession() != null) {
+			client.disconnect();
+		}
+		if (counterKey != null) {
+			counterCache.release(counterKey);
+			counterKey = null;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+
+/**
+ * Sessions to the ESXi hosts managed by the vCenter of a monitored entity, opened on first use.
+ * Hosts are reached with the scheme, port and path of the vCenter URI and the host credentials
+ * of the monitored entity.
+ */
+public class HostSessionPool implements Managed {
+
+	private static final Logger LOG = LoggerFactory.getLogger(HostSessionPool.class);
+
+	private final MonitoredEntity configuration;
+	private final CounterMetadataCache counterCache;
+	private final ConcurrentMap<String,HostSession> sessions = new ConcurrentHashMap<String,HostSession>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param configuration {@link MonitoredEntity} of the vCenter
+	 */
+	public HostSessionPool(MonitoredEntity configuration) {
+		this(configuration,null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param configuration {@link MonitoredEntity} of the vCenter
+	 * @param counterCache {@link CounterMetadataCache} the performance counters of the hosts are shared through,
+	 * null to fetch them from each host
+	 */
+	public HostSessionPool(MonitoredEntity configuration,CounterMetadataCache counterCache) {
+		this.configuration = configuration;
+		this.counterCache = counterCache;
+	}
+
+	/**
+	 * Returns the session of a host, creating it on first use
+	 * 
+	 * @param hostName Name of the host in vCenter, which is its address
+	 * @return {@link HostSession}
+	 */
+	public HostSession get(String hostName) {
+		HostSession session = sessions.get(hostName);
+		if (session == null) {
+			URI vcenter = configuration.getUri();
+			URI uri;
+			try {
+				uri = new URI(vcenter.getScheme(),null,hostName,vcenter.getPort(),vcenter.getPath(),null,null);
+			} catch (URISyntaxException e) {
+				throw Throwables.propagate(e);
+			}
+			VMwareClient client = new VMwareClient(uri,configuration.getHostUsername(),configuration.getHostPassword(),
+					configuration.getName() + "-" + hostName);
+			client.setQueryFormat(configuration.getQueryFormat());
+			client.setRequestTimeout(configuration.getRequestTimeout().toMilliseconds());
+			HostSession created = new HostSession(client,counterCache,AdaptiveBatchSizer.of(configuration));
+			session = sessions.putIfAbsent(hostName,created);
+			if (session == null) {
+				LOG.info("{}: Collecting realtime statistics of host {} directly from {}",configuration.getName(),hostName,uri);
+				session = created;
+			}
+		}
+		return session;
+	}
+
+	/**
+	 * Closes the sessions of the hosts that are no longer managed by the vCenter
+	 * 
+	 * @param hostNames Names of the hosts of the inventory
+	 */
+	public void retain(Collection<String> hostNames) {
+		for (Map.Entry<String,HostSession> host : sessions.entrySet()) {
+			if (!hostNames.contains(host.getKey()) && sessions.remove(host.getKey(),host.getValue())) {
+				LOG.info("{}: Host {} is no longer in the inventory, closing its session",configuration.getName(),host.getKey());
+				close(host.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of hosts with a session
+	 * 
+	 * @return {@link int}
+	 */
+	public int size() {
+		return sessions.size();
+	}
+
+	@Override
+	public void start() {
+	}
+
+	@Override
+	public void stop() {
+		for (HostSession session : sessions.values()) {
+			close(session);
+		}
+		sessions.clear();
+	}
+
+	private static void close(HostSession session) {
+		try {
+			session.close();
+		} catch (Exception e) {
+			LOG.debug("Unable to close host session {}",session.getClient().getName(),e);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import java.util.regex.Pattern;
+
+/**
+ * Selects the instances of the performance counters of a managed object type that are collected.
+ * Counters such as <em>cpu.usage</em> report an aggregate series, whose instance is the empty string,
+ * along with a series for each vCPU, vNIC or disk.
+ * <ul>
+ * <li><code>""</code> - only the aggregate series, the default</li>
+ * <li><code>"*"</code> - every series</li>
+ * <li>any other value - the series whose instance matches the regular expression</li>
+ * </ul>
+ * Measurements of an instance series are sent with the instance appended to the source.
+ */
+public class InstanceFilter {
+
+	/**
+	 * Instance of the aggregate series of a performance counter
+	 */
+	public static final String AGGREGATE_INSTANCE = "";
+
+	/**
+	 * Instance that requests every series of a performance counter
+	 */
+	public static final String ALL_INSTANCES = "*";
+
+	/**
+	 * Filter that only selects the aggregate series
+	 */
+	public static final InstanceFilter AGGREGATE = new InstanceFilter(AGGREGATE_INSTANCE);
+
+	private final String spec;
+	private final Pattern pattern;
+
+	private InstanceFilter(String spec) {
+		this.spec = spec;
+		this.pattern = AGGREGATE_INSTANCE.equals(spec) || ALL_INSTANCES.equals(spec) ? null : Pattern.compile(spec);
+	}
+
+	/**
+	 * Creates the filter of a catalog entry
+	 *
+	 * @param spec <code>""</code>, <code>"*"</code> or a regular expression, null for the aggregate series
+	 * @return {@link InstanceFilter}
+	 * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+	 */
+	public static InstanceFilter of(String spec) {
+		return spec == null || AGGREGATE_INSTANCE.equals(spec) ? AGGREGATE : new InstanceFilter(spec);
+	}
+
+	/**
+	 * Returns the instance to set on the {@link com.vmware.vim25.PerfMetricId}s of a query,
+	 * the end point only filters the aggregate series so expressions request every series.
+	 *
+	 * @return {@link String}
+	 */
+	public String getQueryInstance() {
+		return AGGREGATE_INSTANCE.equals(spec) ? AGGREGATE_INSTANCE : ALL_INSTANCES;
+	}
+
+	/**
+	 * Returns true if the filter selects series by regular expression
+	 *
+	 * @return {@link boolean}
+	 */
+	public boolean isPattern() {
+		return pattern != null;
+	}
+
+	/**
+	 * Returns true if the series of an instance is collected
+	 *
+	 * @param instance Instance of the series, empty for the aggregate
+	 * @return {@link boolean}
+	 */
+	public boolean matches(String instance) {
+		if (pattern != null) {
+			return pattern.matcher(instance == null ? AGGREGATE_INSTANCE : instance).matches();
+		}
+		return ALL_INSTANCES.equals(spec) || instance == null || instance.isEmpty();
+	}
+
+	/**
+	 * Returns the source of the measurements of a series
+	 *
+	 * @param source Source of the managed object
+	 * @param instance Instance of the series
+	 * @return the source, qualified with the instance for instance series
+	 */
+	public static String qualify(String source,String instance) {
+		return instance == null || instance.isEmpty() ? source : source + "-" + instance;
+	}
+
+	@Override
+	public String toString() {
+		return spec;
+	}
+}
@@ -0,0 +1,162 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import com.vmware.vim25.ManagedObjectReference;
+
+/**
+ * Managed object of an {@link InventoryIndex} along with the source its measurements are sent with.
+ * Entries are immutable and carried over from one index to the next while the managed object keeps its name,
+ * along with their source when only the host changes.
+ */
+public class InventoryEntry {
+
+	private final ManagedObjectReference managedObject;
+	private final String name;
+	private final String source;
+	private final String host;
+	private final String instanceUuid;
+	private final boolean qualified;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param prefix Prefix of the source, the name of the end point
+	 * @param managedObject {@link ManagedObjectReference}
+	 * @param name Name of the managed object
+	 */
+	public InventoryEntry(String prefix,ManagedObjectReference managedObject,String name) {
+		this(prefix,managedObject,name,null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param prefix Prefix of the source, the name of the end point
+	 * @param managedObject {@link ManagedObjectReference}
+	 * @param name Name of the managed object
+	 * @param host Value of the {@link ManagedObjectReference} of the host a virtual machine runs on, null otherwise
+	 */
+	public InventoryEntry(String prefix,ManagedObjectReference managedObject,String name,String host) {
+		this(prefix,managedObject,name,host,null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param prefix Prefix of the source, the name of the end point
+	 * @param managedObject {@link ManagedObjectReference}
+	 * @param name Name of the managed object
+	 * @param host Value of the {@link ManagedObjectReference} of the host a virtual machine runs on, null otherwise
+	 * @param instanceUuid Instance UUID of a virtual machine, null otherwise
+	 */
+	public InventoryEntry(String prefix,ManagedObjectReference managedObject,String name,String host,String instanceUuid) {
+		// Prefix the managed object name with the end point name to get unique sources
+		this(managedObject,name,host,instanceUuid,(prefix + "-" + name).intern(),false);
+	}
+
+	private InventoryEntry(ManagedObjectReference managedObject,String name,String host,String instanceUuid,
+			String source,boolean qualified) {
+		this.managedObject = managedObject;
+		this.name = name;
+		this.host = host;
+		this.instanceUuid = instanceUuid;
+		this.source = source;
+		this.qualified = qualified;
+	}
+
+	/**
+	 * Returns the entry of the managed object whose source is qualified with the value of its
+	 * {@link ManagedObjectReference}, for managed objects that share their name with another of the same type
+	 * 
+	 * @return {@link InventoryEntry}, this entry if it is already qualified
+	 */
+	public InventoryEntry qualify() {
+		if (qualified) {
+			return this;
+		}
+		return new InventoryEntry(managedObject,name,host,instanceUuid,(source + "-" + managedObject.getValue()).intern(),true);
+	}
+
+	/**
+	 * Returns the entry of the managed object with the host and instance UUID of a later walk, keeping its source
+	 * 
+	 * @param host Value of the {@link ManagedObjectReference} of the host, null if unknown
+	 * @param instanceUuid Instance UUID of a virtual machine, null otherwise
+	 * @return {@link InventoryEntry}
+	 */
+	public InventoryEntry withRuntime(String host,String instanceUuid) {
+		return new InventoryEntry(managedObject,name,host,instanceUuid,source,qualified);
+	}
+
+	/**
+	 * Returns true if the source is qualified with the value of the {@link ManagedObjectReference}
+	 * 
+	 * @return {@link boolean}
+	 */
+	public boolean isQualified() {
+		return qualified;
+	}
+
+	/**
+	 * Returns the managed object
+	 * 
+	 * @return {@link ManagedObjectReference}
+	 */
+	public ManagedObjectReference getManagedObject() {
+		return managedObject;
+	}
+
+	/**
+	 * Returns the name of the managed object
+	 * 
+	 * @return {@link String}
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the source of the measurements of the managed object
+	 * 
+	 * @return {@link String}
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns the host a virtual machine runs on
+	 * 
+	 * @return Value of the {@link ManagedObjectReference} of the host, null if unknown or not a virtual machine
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * Returns the instance UUID of a virtual machine, which is the same in vCenter and on its host
+	 * 
+	 * @return {@link String}, null if unknown or not a virtual machine
+	 */
+	public String getInstanceUuid() {
+		return instanceUuid;
+	}
+
+	@Override
+	public String toString() {
+		return managedObject.getValue() + "(" + name + ")";
+	}
+}
@@ -0,0 +1,383 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
+import com.vmware.vim25.HostSystemConnectionState;
+import com.vmware.vim25.HostSystemPowerState;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.VirtualMachineConnectionState;
+import com.vmware.vim25.VirtualMachinePowerState;
+
+/**
+ * Immutable index of the managed objects of several types, retrieved from the end point in a single
+ * inventory walk. The managed objects of each type are indexed by the value of their
+ * {@link ManagedObjectReference}, so managed objects that share a name are all collected, the sources
+ * of those that share the name of another managed object of the same type are qualified with the value
+ * of their reference to keep their measurements apart.
+ * 
+ * The {@link InventoryEntry} of a managed object is reused from the previous index while its name
+ * does not change, so its source is only built once and is kept when the managed object moves to another
+ * host. Only managed objects new to the index are qualified, the sources of the others do not change.
+ * 
+ * Virtual machines and hosts that are not powered on and connected do not report performance statistics,
+ * they are left out of the index and only their references are kept.
+ */
+public class InventoryIndex {
+
+	public static final String NAME_PROPERTY = "name";
+	public static final String POWER_STATE_PROPERTY = "runtime.powerState";
+	public static final String CONNECTION_STATE_PROPERTY = "runtime.connectionState";
+	public static final String HOST_PROPERTY = "runtime.host";
+	public static final String INSTANCE_UUID_PROPERTY = "config.instanceUuid";
+	public static final String VIRTUAL_MACHINE = "VirtualMachine";
+	public static final String HOST_SYSTEM = "HostSystem";
+
+	/**
+	 * Managed object types that have a power and connection state
+	 */
+	private static final ImmutableSet<String> RUNTIME_TYPES = ImmutableSet.of(VIRTUAL_MACHINE,HOST_SYSTEM);
+
+	private final ImmutableMap<String,ImmutableMap<String,InventoryEntry>> index;
+	private final ImmutableMap<String,ImmutableSet<String>> skipped;
+
+	private InventoryIndex(ImmutableMap<String,ImmutableMap<String,InventoryEntry>> index,
+			ImmutableMap<String,ImmutableSet<String>> skipped) {
+		this.index = index;
+		this.skipped = skipped;
+	}
+
+	/**
+	 * Returns the properties to retrieve for the managed objects of a type
+	 * 
+	 * @param type Managed object type
+	 * @return the name, along with the power and connection state for the types that have one
+	 * and the host and instance UUID of virtual machines
+	 */
+	public static String[] getProperties(String type) {
+		if (VIRTUAL_MACHINE.equals(type)) {
+			return new String[] {NAME_PROPERTY,POWER_STATE_PROPERTY,CONNECTION_STATE_PROPERTY,HOST_PROPERTY,INSTANCE_UUID_PROPERTY};
+		}
+		if (RUNTIME_TYPES.contains(type)) {
+			return new String[] {NAME_PROPERTY,POWER_STATE_PROPERTY,CONNECTION_STATE_PROPERTY};
+		}
+		return new String[] {NAME_PROPERTY};
+	}
+
+	/**
+	 * Returns true if a managed object is running, that is powered on and connected when it has
+	 * a power and connection state
+	 * 
+	 * @param properties Properties of the managed object
+	 * @return {@link boolean}
+	 */
+	public static boolean isRunning(Map<String,Object> properties) {
+		Object power = properties.get(POWER_STATE_PROPERTY);
+		if (power instanceof VirtualMachinePowerState && power != VirtualMachinePowerState.POWERED_ON
+				|| power instanceof HostSystemPowerState && power != HostSystemPowerState.POWERED_ON) {
+			return false;
+		}
+		Object connection = properties.get(CONNECTION_STATE_PROPERTY);
+		if (connection instanceof VirtualMachineConnectionState && connection != VirtualMachineConnectionState.CONNECTED
+				|| connection instanceof HostSystemConnectionState && connection != HostSystemConnectionState.CONNECTED) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the index of the result of an inventory walk
+	 *
+	 * @param prefix Prefix of the sources of the managed objects, the name of the end point
+	 * @param types Managed object types that were retrieved, types without managed objects are indexed as empty
+	 * @param properties {@link Map} of {@link ManagedObjectReference} to its properties, which include its <em>name</em>
+	 * and for virtual machines and hosts their power and connection state
+	 * @param previous Previous index whose entries are reused, null if there is none
+	 * @return {@link InventoryIndex}
+	 */
+	public static InventoryIndex of(String prefix,Collection<String> types,
+			Map<ManagedObjectReference,Map<String,Object>> properties,InventoryIndex previous) {
+		// The properties are the whole inventory, the names of managed objects that are gone are free
+		return new Builder(prefix,types,previous,false).add(properties);
+	}
+
+	/**
+	 * Returns the entry of a running managed object, reusing the entry of the previous index while
+	 * the managed object keeps its name
+	 */
+	private static InventoryEntry toEntry(String prefix,ManagedObjectReference mor,String name,
+			Map<String,Object> properties,InventoryEntry previous) {
+		Object host = properties.get(HOST_PROPERTY);
+		String hostValue = host instanceof ManagedObjectReference ? ((ManagedObjectReference) host).getValue() : null;
+		Object instanceUuid = properties.get(INSTANCE_UUID_PROPERTY);
+		String uuid = instanceUuid instanceof String ? (String) instanceUuid : null;
+		if (previous == null || !previous.getName().equals(name)) {
+			return new InventoryEntry(prefix,mor,name,hostValue,uuid);
+		}
+		if (Objects.equal(previous.getHost(),hostValue) && Objects.equal(previous.getInstanceUuid(),uuid)) {
+			return previous;
+		}
+		return previous.withRuntime(hostValue,uuid);
+	}
+
+	/**
+	 * Qualifies the sources of the managed objects that share their name with another one. Entries carried
+	 * over from the previous index keep their source, a new entry is qualified when another entry of the type
+	 * has its name or another managed object already has its unqualified source.
+	 * 
+	 * @param objects {@link Map} of managed object reference value to {@link InventoryEntry} of a single type
+	 * @param established Values of the managed objects whose entry was carried over from the previous index
+	 * @param claimed Names whose unqualified source belongs to managed objects other than those of the entries
+	 * @return {@link ImmutableMap} of the entries, qualified where their name is shared
+	 */
+	private static ImmutableMap<String,InventoryEntry> qualifySharedNames(Map<String,InventoryEntry> objects,
+			Set<String> established,Set<String> claimed) {
+		Set<String> names = new HashSet<String>();
+		Set<String> shared = new HashSet<String>();
+		for (InventoryEntry entry : objects.values()) {
+			if (!names.add(entry.getName())) {
+				shared.add(entry.getName());
+			}
+		}
+		if (shared.isEmpty() && Collections.disjoint(names,claimed)) {
+			return ImmutableMap.copyOf(objects);
+		}
+		// The unqualified sources of established entries are kept, a name only has one
+		Set<String> taken = new HashSet<String>(claimed);
+		Set<String> kept = new HashSet<String>();
+		for (Map.Entry<String,InventoryEntry> object : objects.entrySet()) {
+			InventoryEntry entry = object.getValue();
+			if (established.contains(object.getKey()) && !entry.isQualified() && taken.add(entry.getName())) {
+				kept.add(object.getKey());
+			}
+		}
+		ImmutableMap.Builder<String,InventoryEntry> qualified = ImmutableMap.builder();
+		for (Map.Entry<String,InventoryEntry> object : objects.entrySet()) {
+			InventoryEntry entry = object.getValue();
+			boolean unique = !shared.contains(entry.getName()) && !taken.contains(entry.getName());
+			qualified.put(object.getKey(),kept.contains(object.getKey()) || entry.isQualified() || unique ? entry : entry.qualify());
+		}
+		return qualified.build();
+	}
+
+	/**
+	 * Indexes the pages of an inventory walk as they are retrieved, so that the entries of the walk are held
+	 * once rather than along with every page. The sources of each page are qualified against the managed objects
+	 * of the earlier pages and against those of the previous index that have not been retrieved yet, so that the
+	 * queries of a page can be submitted before the walk completes without two managed objects sharing a source.
+	 */
+	public static class Builder {
+
+		private final String prefix;
+		private final InventoryIndex previous;
+		private final Map<String,Map<String,InventoryEntry>> objects = new LinkedHashMap<String,Map<String,InventoryEntry>>();
+		private final Map<String,ImmutableSet.Builder<String>> notRunning = new HashMap<String,ImmutableSet.Builder<String>>();
+		// Names of each type whose unqualified source belongs to a managed object of the walk or of the previous index
+		private final Map<String,Multiset<String>> claimed = new HashMap<String,Multiset<String>>();
+		private int pages = 0;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param prefix Prefix of the sources of the managed objects, the name of the end point
+		 * @param types Managed object types that are retrieved
+		 * @param previous Previous index whose entries are reused, null if there is none
+		 */
+		public Builder(String prefix,Collection<String> types,InventoryIndex previous) {
+			this(prefix,types,previous,true);
+		}
+
+		private Builder(String prefix,Collection<String> types,InventoryIndex previous,boolean paged) {
+			this.prefix = prefix;
+			this.previous = previous;
+			for (String type : types) {
+				objects.put(type,new HashMap<String,InventoryEntry>());
+				notRunning.put(type,ImmutableSet.<String>builder());
+				Multiset<String> names = HashMultiset.create();
+				if (paged && previous != null) {
+					// Managed objects of the previous index may be retrieved by a later page
+					for (InventoryEntry entry : previous.getEntries(type).values()) {
+						if (!entry.isQualified()) {
+							names.add(entry.getName());
+						}
+					}
+				}
+				claimed.put(type,names);
+			}
+		}
+
+		/**
+		 * Indexes a page and adds it to the walk
+		 * 
+		 * @param page {@link Map} of {@link ManagedObjectReference} to its properties, which include its <em>name</em>
+		 * and for virtual machines and hosts their power and connection state
+		 * @return {@link InventoryIndex} of the page, whose sources are final
+		 */
+		public InventoryIndex add(Map<ManagedObjectReference,Map<String,Object>> page) {
+			Map<String,Map<String,InventoryEntry>> byType = new HashMap<String,Map<String,InventoryEntry>>();
+			Map<String,Set<String>> established = new HashMap<String,Set<String>>();
+			Map<String,ImmutableSet.Builder<String>> pageNotRunning = new HashMap<String,ImmutableSet.Builder<String>>();
+			for (String type : objects.keySet()) {
+				byType.put(type,new HashMap<String,InventoryEntry>());
+				established.put(type,new HashSet<String>());
+				pageNotRunning.put(type,ImmutableSet.<String>builder());
+			}
+			for (Map.Entry<ManagedObjectReference,Map<String,Object>> object : page.entrySet()) {
+				ManagedObjectReference mor = object.getKey();
+				Map<String,InventoryEntry> entries = byType.get(mor.getType());
+				Object name = object.getValue().get(NAME_PROPERTY);
+				if (entries == null || name == null) {
+					continue;
+				}
+				// The name of the managed object is no longer claimed by its prior entry, the entry of the page claims it
+				InventoryEntry prior = objects.get(mor.getType()).get(mor.getValue());
+				if (prior == null && previous != null) {
+					prior = previous.getEntries(mor.getType()).get(mor.getValue());
+				}
+				if (prior != null && !prior.isQualified()) {
+					claimed.get(mor.getType()).remove(prior.getName());
+				}
+				if (!isRunning(object.getValue())) {
+					pageNotRunning.get(mor.getType()).add(mor.getValue());
+					continue;
+				}
+				if (prior != null && prior.getName().equals(name)) {
+					established.get(mor.getType()).add(mor.getValue());
+				}
+				entries.put(mor.getValue(),toEntry(prefix,mor,(String) name,object.getValue(),prior));
+			}
+
+			ImmutableMap.Builder<String,ImmutableMap<String,InventoryEntry>> index = ImmutableMap.builder();
+			ImmutableMap.Builder<String,ImmutableSet<String>> skipped = ImmutableMap.builder();
+			for (Map.Entry<String,Map<String,InventoryEntry>> type : byType.entrySet()) {
+				Multiset<String> names = claimed.get(type.getKey());
+				ImmutableMap<String,InventoryEntry> entries = qualifySharedNames(type.getValue(),
+						established.get(type.getKey()),names.elementSet());
+				for (InventoryEntry entry : entries.values()) {
+					if (!entry.isQualified()) {
+						names.add(entry.getName());
+					}
+				}
+				objects.get(type.getKey()).putAll(entries);
+				ImmutableSet<String> typeSkipped = pageNotRunning.get(type.getKey()).build();
+				notRunning.get(type.getKey()).addAll(typeSkipped);
+				index.put(type.getKey(),entries);
+				skipped.put(type.getKey(),typeSkipped);
+			}
+			pages++;
+			return new InventoryIndex(index.build(),skipped.build());
+		}
+
+		/**
+		 * Returns the number of pages added
+		 * 
+		 * @return {@link int}
+		 */
+		public int getPages() {
+			return pages;
+		}
+
+		/**
+		 * Builds the index of the whole walk, the managed objects keep the sources of their page
+		 * 
+		 * @return {@link InventoryIndex}
+		 */
+		public InventoryIndex build() {
+			ImmutableMap.Builder<String,ImmutableMap<String,InventoryEntry>> index = ImmutableMap.builder();
+			ImmutableMap.Builder<String,ImmutableSet<String>> skipped = ImmutableMap.builder();
+			for (Map.Entry<String,Map<String,InventoryEntry>> type : objects.entrySet()) {
+				index.put(type.getKey(),ImmutableMap.copyOf(type.getValue()));
+				skipped.put(type.getKey(),notRunning.get(type.getKey()).build());
+			}
+			return new InventoryIndex(index.build(),skipped.build());
+		}
+	}
+
+	/**
+	 * Returns the managed object types that were retrieved
+	 * 
+	 * @return {@link Set} of types
+	 */
+	public Set<String> getTypes() {
+		return index.keySet();
+	}
+
+	/**
+	 * Returns true if the managed objects of a type were retrieved
+	 * 
+	 * @param type Managed object type
+	 * @return {@link boolean}
+	 */
+	public boolean contains(String type) {
+		return index.containsKey(type);
+	}
+
+	/**
+	 * Returns the running managed objects of a type
+	 *
+	 * @param type Managed object type
+	 * @return {@link Map} of managed object reference value to {@link InventoryEntry}, empty if the type was not retrieved
+	 */
+	public Map<String,InventoryEntry> getEntries(String type) {
+		ImmutableMap<String,InventoryEntry> objects = index.get(type);
+		return objects != null ? objects : ImmutableMap.<String,InventoryEntry>of();
+	}
+
+	/**
+	 * Returns the number of managed objects of a type that were left out because they are not running
+	 * 
+	 * @param type Managed object type
+	 * @return {@link int}
+	 */
+	public int getSkipped(String type) {
+		return getSkippedObjects(type).size();
+	}
+
+	/**
+	 * Returns the managed objects of a type that were left out because they are not running
+	 * 
+	 * @param type Managed object type
+	 * @return {@link Set} of managed object reference values, empty if the type was not retrieved
+	 */
+	public Set<String> getSkippedObjects(String type) {
+		ImmutableSet<String> objects = skipped.get(type);
+		return objects != null ? objects : ImmutableSet.<String>of();
+	}
+
+	/**
+	 * Returns the total number of running managed objects in the index
+	 *
+	 * @return {@link int}
+	 */
+	public int size() {
+		int size = 0;
+		for (ImmutableMap<String,InventoryEntry> objects : index.values()) {
+			size += objects.size();
+		}
+		return size;
+	}
+}
@@ -0,0 +1,196 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
+import com.vmware.vim25.ManagedObjectReference;
+
+/**
+ * Measures the work done discovering the inventory of an end point: the latency of each discovery
+ * cycle, the pages and estimated bytes retrieved, the managed objects of each type, and the managed
+ * objects added, removed and renamed by each cycle. Managed objects that are powered off or disconnected
+ * are still part of the inventory, so they are not counted as removed.
+ */
+public class InventoryMetrics implements MetricSet {
+
+	/**
+	 * Approximate number of bytes of XML used to encode a managed object and each of its properties
+	 */
+	private static final int OBJECT_ENCODING_SIZE = 160;
+	private static final int PROPERTY_ENCODING_SIZE = 96;
+
+	private final Class<?> owner;
+	private final String host;
+	private final String qualifier;
+
+	private final Timer discoveryTimer = new Timer();
+	private final Meter pageMeter = new Meter();
+	// The size of the responses is not available from the port, it is estimated from their content
+	private final Meter estimatedBytesMeter = new Meter();
+	private final Histogram addedHistogram = new Histogram(new ExponentiallyDecayingReservoir());
+	private final Histogram removedHistogram = new Histogram(new ExponentiallyDecayingReservoir());
+	private final Histogram renamedHistogram = new Histogram(new ExponentiallyDecayingReservoir());
+	private volatile Map<String,Integer> objects = ImmutableMap.of();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param owner Class the metrics are named after
+	 * @param host Host of the end point
+	 * @param qualifier Qualifier appended to the names of the metrics, null for none
+	 */
+	public InventoryMetrics(Class<?> owner,String host,String qualifier) {
+		this.owner = owner;
+		this.host = host;
+		this.qualifier = qualifier;
+	}
+
+	/**
+	 * Starts timing a discovery cycle
+	 * 
+	 * @return {@link Timer.Context} to stop once the cycle completes
+	 */
+	public Timer.Context time() {
+		return discoveryTimer.time();
+	}
+
+	/**
+	 * Records a page of managed objects retrieved from the end point
+	 * 
+	 * @param page {@link Map} of {@link ManagedObjectReference} to its properties
+	 */
+	public void recordPage(Map<ManagedObjectReference,Map<String,Object>> page) {
+		pageMeter.mark();
+		estimatedBytesMeter.mark(estimatePageSize(page));
+	}
+
+	/**
+	 * Records an update set applied to an incrementally tracked inventory
+	 * 
+	 * @param objectUpdates Number of managed objects updated by the update set
+	 */
+	public void recordUpdateSet(int objectUpdates) {
+		pageMeter.mark();
+		estimatedBytesMeter.mark((long) objectUpdates * (OBJECT_ENCODING_SIZE + PROPERTY_ENCODING_SIZE));
+	}
+
+	/**
+	 * Records the inventory at the end of a discovery cycle along with its changes since the previous cycle
+	 * 
+	 * @param previous {@link InventoryIndex} of the previous cycle, null if there is none
+	 * @param current {@link InventoryIndex} of the cycle
+	 */
+	public void recordInventory(InventoryIndex previous,InventoryIndex current) {
+		ImmutableMap.Builder<String,Integer> counts = ImmutableMap.builder();
+		int added = 0;
+		int removed = 0;
+		int renamed = 0;
+		for (String type : current.getTypes()) {
+			Map<String,InventoryEntry> entries = current.getEntries(type);
+			counts.put(type,entries.size());
+			if (previous == null) {
+				continue;
+			}
+			// Managed objects that are not running are compared too, powering one off does not remove it
+			Map<String,InventoryEntry> previousEntries = previous.getEntries(type);
+			Set<String> skipped = current.getSkippedObjects(type);
+			Set<String> previousSkipped = previous.getSkippedObjects(type);
+			for (Map.Entry<String,InventoryEntry> entry : entries.entrySet()) {
+				InventoryEntry previousEntry = previousEntries.get(entry.getKey());
+				if (previousEntry == null) {
+					if (!previousSkipped.contains(entry.getKey())) {
+						added++;
+					}
+				} else if (!previousEntry.getName().equals(entry.getValue().getName())) {
+					renamed++;
+				}
+			}
+			for (String value : skipped) {
+				if (!previousEntries.containsKey(value) && !previousSkipped.contains(value)) {
+					added++;
+				}
+			}
+			for (String value : previousEntries.keySet()) {
+				if (!entries.containsKey(value) && !skipped.contains(value)) {
+					removed++;
+				}
+			}
+			for (String value : previousSkipped) {
+				if (!entries.containsKey(value) && !skipped.contains(value)) {
+					removed++;
+				}
+			}
+		}
+		objects = counts.build();
+		if (previous != null) {
+			addedHistogram.update(added);
+			removedHistogram.update(removed);
+			renamedHistogram.update(renamed);
+		}
+	}
+
+	/**
+	 * Estimates the number of bytes used to encode a page of managed objects in a SOAP response
+	 * 
+	 * @param page {@link Map} of {@link ManagedObjectReference} to its properties
+	 * @return Size in bytes
+	 */
+	static long estimatePageSize(Map<ManagedObjectReference,Map<String,Object>> page) {
+		long size = 0;
+		for (Map.Entry<ManagedObjectReference,Map<String,Object>> object : page.entrySet()) {
+			size += OBJECT_ENCODING_SIZE + object.getKey().getValue().length();
+			for (Map.Entry<String,Object> property : object.getValue().entrySet()) {
+				size += PROPERTY_ENCODING_SIZE + property.getKey().length();
+				if (property.getValue() instanceof String) {
+					size += ((String) property.getValue()).length();
+				}
+			}
+		}
+		return size;
+	}
+
+	private String name(String metric) {
+		return MetricRegistry.name(owner,metric,host,qualifier);
+	}
+
+	@Override
+	public Map<String,Metric> getMetrics() {
+		return ImmutableMap.<String,Metric>builder()
+				.put(name("inventory-timer"),discoveryTimer)
+				.put(name("inventory-page-meter"),pageMeter)
+				.put(name("inventory-estimated-bytes-meter"),estimatedBytesMeter)
+				.put(name("inventory-added"),addedHistogram)
+				.put(name("inventory-removed"),removedHistogram)
+				.put(name("inventory-renamed"),renamedHistogram)
+				.put(name("inventory-objects"),new Gauge<Map<String,Integer>>() {
+					@Override
+					public Map<String,Integer> getValue() {
+						return objects;
+					}
+				})
+				.build();
+	}
+}
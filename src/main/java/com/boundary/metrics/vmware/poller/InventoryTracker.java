@@ -0,0 +1,370 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.vmware.connection.helpers.builders.ObjectSpecBuilder;
+import com.vmware.connection.helpers.builders.PropertyFilterSpecBuilder;
+import com.vmware.connection.helpers.builders.PropertySpecBuilder;
+import com.vmware.connection.helpers.builders.TraversalSpecBuilder;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ObjectSpec;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyChangeOp;
+import com.vmware.vim25.PropertyFilterSpec;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.PropertySpec;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+import com.vmware.vim25.ServiceContent;
+import com.vmware.vim25.UpdateSet;
+import com.vmware.vim25.VimPortType;
+import com.vmware.vim25.WaitOptions;
+
+/**
+ * Tracks the managed objects of the catalog types of an end point incrementally.
+ *
+ * A background thread takes one snapshot of the inventory through a private property collector
+ * filtering a container view of the root folder, or of each container at the inventory paths of the
+ * monitored entity, then applies the objects that are added, removed
+ * or renamed, and the virtual machines and hosts whose power or connection state changes, as reported
+ * by <code>WaitForUpdatesEx</code>. After each complete update set an immutable {@link InventoryIndex}
+ * is published, which collectors read without locking instead of walking the inventory every poll.
+ *
+ * The tracker uses its own {@link VMwareClient} since <code>WaitForUpdatesEx</code> blocks its session.
+ * When tracking fails the session is dropped and a new snapshot is taken after a delay, the last
+ * published view remains available in the meantime.
+ */
+public class InventoryTracker implements Runnable, Managed, MetricSet {
+
+	private static final Logger LOG = LoggerFactory.getLogger(InventoryTracker.class);
+
+	/**
+	 * Longest time in seconds a <code>WaitForUpdatesEx</code> call waits for changes, the request
+	 * timeout of the client of the tracker must be longer
+	 */
+	public static final int MAX_WAIT_SECONDS = 60;
+
+	/**
+	 * Time in seconds before tracking is restarted after a failure
+	 */
+	private static final int RETRY_DELAY_SECONDS = 10;
+
+	private final VMwareClient vmwClient;
+	private final Set<String> types;
+	private final List<String> inventoryPaths;
+	private final List<String> hostInventoryPaths;
+
+	// Current state of the inventory, only accessed by the tracking thread
+	private final Map<String,ManagedObjectReference> objects = new HashMap<String,ManagedObjectReference>();
+	private final Map<String,Map<String,Object>> properties = new HashMap<String,Map<String,Object>>();
+
+	private volatile InventoryIndex index = null;
+	private final InventoryMetrics inventoryMetrics;
+	// Times the initial snapshot of a tracking session
+	private Timer.Context snapshotTimer;
+	private volatile boolean running = false;
+	private volatile ManagedObjectReference propertyCollector;
+	private Thread thread;
+
+	/**
+	 * Constructor
+	 *
+	 * @param vmwClient {@link VMwareClient} dedicated to tracking the inventory
+	 * @param types Managed object types to track
+	 * @param inventoryPaths Inventory paths of the containers to track, empty for the whole inventory
+	 */
+	public InventoryTracker(VMwareClient vmwClient,Collection<String> types,List<String> inventoryPaths) {
+		this(vmwClient,types,inventoryPaths,inventoryPaths);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param vmwClient {@link VMwareClient} dedicated to tracking the inventory
+	 * @param types Managed object types to track
+	 * @param inventoryPaths Inventory paths of the containers to track, empty for the whole inventory
+	 * @param hostInventoryPaths Inventory paths of the containers hosts are tracked in
+	 */
+	public InventoryTracker(VMwareClient vmwClient,Collection<String> types,List<String> inventoryPaths,List<String> hostInventoryPaths) {
+		this.vmwClient = vmwClient;
+		this.types = ImmutableSet.copyOf(types);
+		this.inventoryPaths = ImmutableList.copyOf(inventoryPaths);
+		this.hostInventoryPaths = ImmutableList.copyOf(hostInventoryPaths);
+		this.inventoryMetrics = new InventoryMetrics(getClass(),vmwClient.getHost(),null);
+	}
+
+	/**
+	 * Returns the tracked managed object types
+	 *
+	 * @return {@link Set} of types
+	 */
+	public Set<String> getTypes() {
+		return types;
+	}
+
+	/**
+	 * Returns the last published index of the tracked types
+	 *
+	 * @return {@link InventoryIndex}, null until the initial snapshot has completed
+	 */
+	public InventoryIndex getInventory() {
+		return index;
+	}
+
+	@Override
+	public Map<String,Metric> getMetrics() {
+		return inventoryMetrics.getMetrics();
+	}
+
+	@Override
+	public synchronized void start() {
+		running = true;
+		thread = new Thread(this,"vmware-inventory-" + vmwClient.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public synchronized void stop() throws Exception {
+		running = false;
+		ManagedObjectReference collector = propertyCollector;
+		if (collector != null) {
+			try {
+				vmwClient.getVimPort().cancelWaitForUpdates(collector);
+			} catch (Exception e) {
+				LOG.debug("{}: Unable to cancel inventory tracking",vmwClient.getName(),e);
+			}
+		}
+		if (thread != null) {
+			thread.interrupt();
+			thread.join(TimeUnit.SECONDS.toMillis(RETRY_DELAY_SECONDS));
+		}
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				track();
+			} catch (Throwable e) {
+				if (!running) {
+					break;
+				}
+				LOG.error("{}: Inventory tracking failed, restarting in {}s",vmwClient.getName(),RETRY_DELAY_SECONDS,e);
+				vmwClient.disconnect();
+				try {
+					Thread.sleep(TimeUnit.SECONDS.toMillis(RETRY_DELAY_SECONDS));
+				} catch (InterruptedException i) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		vmwClient.disconnect();
+		LOG.info("{}: Inventory tracking stopped",vmwClient.getName());
+	}
+
+	/**
+	 * Takes a snapshot of the inventory and applies its changes until tracking is stopped
+	 */
+	private void track() throws Exception {
+		vmwClient.connect();
+		VimPortType vimPort = vmwClient.getVimPort();
+		ServiceContent serviceContent = vmwClient.getServiceContent();
+
+		// A private property collector keeps the filter and its versions separate from the other users of the session
+		ManagedObjectReference collector = vimPort.createPropertyCollector(serviceContent.getPropertyCollector());
+		List<ManagedObjectReference> containerViews = new ArrayList<ManagedObjectReference>();
+		try {
+			// Hosts are tracked in their own containers when those of the other types do not hold them
+			List<String> viewTypes = new ArrayList<String>(types);
+			boolean separateHosts = types.contains(InventoryIndex.HOST_SYSTEM) && !hostInventoryPaths.equals(inventoryPaths);
+			if (separateHosts) {
+				viewTypes.remove(InventoryIndex.HOST_SYSTEM);
+				for (ManagedObjectReference container : getContainers(hostInventoryPaths)) {
+					containerViews.add(vimPort.createContainerView(serviceContent.getViewManager(),
+							container,ImmutableList.of(InventoryIndex.HOST_SYSTEM),true));
+				}
+			}
+			if (!viewTypes.isEmpty()) {
+				for (ManagedObjectReference container : getContainers(inventoryPaths)) {
+					containerViews.add(vimPort.createContainerView(serviceContent.getViewManager(),
+							container,viewTypes,true));
+				}
+			}
+			vimPort.createFilter(collector,filterSpec(containerViews),true);
+			propertyCollector = collector;
+
+			objects.clear();
+			properties.clear();
+			snapshotTimer = inventoryMetrics.time();
+			LOG.info("{}: Tracking inventory of {}",vmwClient.getName(),types);
+
+			WaitOptions options = new WaitOptions();
+			options.setMaxWaitSeconds(MAX_WAIT_SECONDS);
+			String version = "";
+			while (running) {
+				UpdateSet updates = vimPort.waitForUpdatesEx(collector,version,options);
+				if (updates != null) {
+					version = updates.getVersion();
+					apply(updates);
+				}
+			}
+		} finally {
+			propertyCollector = null;
+			try {
+				for (ManagedObjectReference containerView : containerViews) {
+					vimPort.destroyView(containerView);
+				}
+				vimPort.destroyPropertyCollector(collector);
+			} catch (Exception e) {
+				LOG.debug("{}: Unable to release inventory property collector",vmwClient.getName(),e);
+			}
+		}
+	}
+
+	/**
+	 * Applies an update set to the inventory, publishing a new view once the update set is complete
+	 *
+	 * @param updates {@link UpdateSet}
+	 */
+	void apply(UpdateSet updates) {
+		int applied = 0;
+		for (PropertyFilterUpdate filterUpdate : updates.getFilterSet()) {
+			for (ObjectUpdate update : filterUpdate.getObjectSet()) {
+				ManagedObjectReference mor = update.getObj();
+				switch (update.getKind()) {
+				case ENTER:
+				case MODIFY:
+					objects.put(mor.getValue(),mor);
+					Map<String,Object> objectProperties = properties.get(mor.getValue());
+					if (objectProperties == null) {
+						objectProperties = new HashMap<String,Object>();
+						properties.put(mor.getValue(),objectProperties);
+					}
+					for (PropertyChange change : update.getChangeSet()) {
+						if (change.getOp() == PropertyChangeOp.ASSIGN) {
+							objectProperties.put(change.getName(),change.getVal());
+						} else {
+							objectProperties.remove(change.getName());
+						}
+					}
+					break;
+				case LEAVE:
+					objects.remove(mor.getValue());
+					properties.remove(mor.getValue());
+					break;
+				}
+				applied++;
+			}
+		}
+		LOG.debug("{}: Applied {} inventory updates",vmwClient.getName(),applied);
+		inventoryMetrics.recordUpdateSet(applied);
+
+		// Truncated update sets are continued by the next call, only publish complete views
+		if (!Boolean.TRUE.equals(updates.isTruncated())) {
+			publish();
+		}
+	}
+
+	/**
+	 * Publishes a new index of the tracked objects
+	 */
+	private void publish() {
+		Map<ManagedObjectReference,Map<String,Object>> current = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		for (Map.Entry<String,ManagedObjectReference> object : objects.entrySet()) {
+			Map<String,Object> objectProperties = properties.get(object.getKey());
+			current.put(object.getValue(),objectProperties != null ? objectProperties : new HashMap<String,Object>());
+		}
+		InventoryIndex previous = index;
+		index = InventoryIndex.of(vmwClient.getName(),types,current,previous);
+		inventoryMetrics.recordInventory(previous,index);
+		if (snapshotTimer != null) {
+			snapshotTimer.stop();
+			snapshotTimer = null;
+		}
+		LOG.info("{}: Published inventory of {} running managed objects",vmwClient.getName(),index.size());
+	}
+
+	/**
+	 * Looks up the containers at inventory paths, paths that do not resolve are logged and skipped
+	 */
+	private List<ManagedObjectReference> getContainers(List<String> paths) throws RuntimeFaultFaultMsg {
+		VimPortType vimPort = vmwClient.getVimPort();
+		ServiceContent serviceContent = vmwClient.getServiceContent();
+		List<ManagedObjectReference> containers = new ArrayList<ManagedObjectReference>();
+		if (paths.isEmpty()) {
+			containers.add(serviceContent.getRootFolder());
+		}
+		for (String path : paths) {
+			ManagedObjectReference container = vimPort.findByInventoryPath(serviceContent.getSearchIndex(),path);
+			if (container != null) {
+				containers.add(container);
+			} else {
+				LOG.warn("{}: No container at inventory path: {}, skipping",vmwClient.getName(),path);
+			}
+		}
+		return containers;
+	}
+
+	/**
+	 * Filter selecting the name, and the power and connection state where present, of the managed objects of the tracked types in container views
+	 */
+	private PropertyFilterSpec filterSpec(List<ManagedObjectReference> containerViews) {
+		PropertySpec[] propertySpecs = new PropertySpec[types.size()];
+		int i = 0;
+		for (String type : types) {
+			propertySpecs[i++] = new PropertySpecBuilder()
+					.all(Boolean.FALSE)
+					.type(type)
+					.pathSet(InventoryIndex.getProperties(type));
+		}
+		ObjectSpec[] objectSpecs = new ObjectSpec[containerViews.size()];
+		i = 0;
+		for (ManagedObjectReference containerView : containerViews) {
+			objectSpecs[i++] = new ObjectSpecBuilder()
+					.obj(containerView)
+					.skip(Boolean.TRUE)
+					.selectSet(
+							new TraversalSpecBuilder()
+									.name("view")
+									.path("view")
+									.skip(false)
+									.type("ContainerView")
+					);
+		}
+		return new PropertyFilterSpecBuilder()
+				.propSet(propertySpecs)
+				.objectSet(objectSpecs);
+	}
+}
@@ -92,6 +92,20 @@ public class MORCatalog {
 		return valid;
 	}
 	
+	/**
+	 * Returns a MOR type {@link Map} of the {@link InstanceFilter} selecting the
+	 * performance counter instances collected for the type
+	 * 
+	 * @return {@link Map}
+	 */
+	public Map<String,InstanceFilter> getInstanceFilters() {
+		Map<String,InstanceFilter> filters = new HashMap<String,InstanceFilter>();
+		for (MORCatalogEntry entry : catalog) {
+			filters.put(entry.getType(),InstanceFilter.of(entry.getInstances()));
+		}
+		return ImmutableMap.copyOf(filters);
+	}
+
 	/**
 	 * Helper function that returns a MOR type {@link Map} of a {@link Map} of performance
 	 * counter names (e.g. <em>cpu.usage.average</em> to {@link Metric}
@@ -25,6 +25,9 @@ public class MORCatalogEntry {
 
 	private String type;
 	private List<PerformanceCounterEntry> counters;
+	private CollectionLane lane;
+	private String instances;
+	private List<String> inventoryPaths;
 	
 	public MORCatalogEntry() {
 		
@@ -49,4 +52,35 @@ public class MORCatalogEntry {
 		return counters;
 	}
 
+	/**
+	 * Returns the lane the type of {@link ManagedObjectReference} is collected in,
+	 * null if the lane is chosen from the statistics the type provides
+	 * 
+	 * @return {@link CollectionLane}
+	 */
+	public CollectionLane getLane() {
+		return lane;
+	}
+
+	/**
+	 * Returns the instances of the performance counters to collect: <code>""</code> for the aggregate
+	 * only, <code>"*"</code> for all or a regular expression, null for the aggregate only
+	 * 
+	 * @return {@link String}
+	 * @see InstanceFilter
+	 */
+	public String getInstances() {
+		return instances;
+	}
+
+	/**
+	 * Returns the inventory paths of the containers the managed objects are discovered in, such as
+	 * <code>Datacenter/host/Cluster</code>, null to use those of the monitored entity
+	 * 
+	 * @return {@link List} of inventory paths
+	 */
+	public List<String> getInventoryPaths() {
+		return inventoryPaths;
+	}
+
 }
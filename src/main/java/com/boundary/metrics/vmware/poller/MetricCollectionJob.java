@@ -31,6 +31,7 @@ public class MetricCollectionJob {
 	private final VMwareClient vmwareClient;
 	private final MetricClient metricsClient;
 	private final MORCatalog morCatalog;
+	private final PerfProviderSummaryCache providerSummaries;
 	
 	/**
 	 * Constructor
@@ -45,6 +46,7 @@ public class MetricCollectionJob {
 		this.vmwareClient = vmwareClient;
 		this.metricsClient = metricsClient;
 		this.morCatalog = morCatalog;
+		this.providerSummaries = new PerfProviderSummaryCache(vmwareClient);
 	}
 
 	public String getHost() {
@@ -66,5 +68,14 @@ public class MetricCollectionJob {
 	public MORCatalog getManagedObjectCatalog() {
 		return morCatalog;
 	}
+
+	/**
+	 * Returns the statistics provided by each managed object type of the end point
+	 * 
+	 * @return {@link PerfProviderSummaryCache}
+	 */
+	public PerfProviderSummaryCache getProviderSummaries() {
+		return providerSummaries;
+	}
 	
 }
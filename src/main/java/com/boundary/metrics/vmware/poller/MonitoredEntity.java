@@ -16,16 +16,28 @@ package com.boundary.metrics.vmware.poller;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+
 import java.net.URI;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.concurrent.Immutable;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
 
 import org.hibernate.validator.constraints.NotEmpty;
 
 import com.boundary.metrics.vmware.client.metrics.Metric;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 /**
  * Represents the information needed to get metrics from a vCenter or ESXi server
@@ -34,11 +46,191 @@ import com.google.common.collect.ImmutableMap;
 @Immutable
 public class MonitoredEntity {
 
+    /**
+     * Folder of a datacenter holding its hosts
+     */
+    private static final String HOST_FOLDER = "host";
+
+    /**
+     * Other folders of a datacenter
+     */
+    private static final ImmutableSet<String> DATACENTER_FOLDERS = ImmutableSet.of("vm","datastore","network");
+
+    /**
+     * Default number of managed objects queried in a single <code>queryPerf</code> call
+     */
+    public static final int DEFAULT_QUERY_BATCH_SIZE = 64;
+
+    /**
+     * Default number of queries that are run concurrently against the end point
+     */
+    public static final int DEFAULT_MAX_QUERIES_IN_FLIGHT = 4;
+
+    /**
+     * Default maximum number of entries in the cache of available performance counters
+     */
+    public static final long DEFAULT_AVAILABILITY_CACHE_SIZE = 10000;
+
+    /**
+     * Default smallest number of managed objects queried in a single <code>queryPerf</code> call
+     */
+    public static final int DEFAULT_MIN_QUERY_BATCH_SIZE = 8;
+
+    /**
+     * Default largest number of managed objects queried in a single <code>queryPerf</code> call
+     */
+    public static final int DEFAULT_MAX_QUERY_BATCH_SIZE = 512;
+
     private final URI uri;
     private final String username;
     private final String password;
     private final String name;
 	private final String catalog;
+
+    /**
+     * Initial number of managed objects whose performance counters are requested in a single
+     * <code>queryPerf</code> call to the end point, adjusted between the minimum and maximum batch
+     * size according to the latency and size of the responses
+     */
+    @JsonProperty
+    @Min(1)
+    private int queryBatchSize = DEFAULT_QUERY_BATCH_SIZE;
+
+    /**
+     * Smallest number of managed objects the batch size is reduced to
+     */
+    @JsonProperty
+    @Min(1)
+    private int minQueryBatchSize = DEFAULT_MIN_QUERY_BATCH_SIZE;
+
+    /**
+     * Largest number of managed objects the batch size is increased to
+     */
+    @JsonProperty
+    @Min(1)
+    private int maxQueryBatchSize = DEFAULT_MAX_QUERY_BATCH_SIZE;
+
+    /**
+     * Duration of a <code>queryPerf</code> call above which the batch size is reduced
+     */
+    @JsonProperty
+    @NotNull
+    private Duration targetQueryLatency = Duration.seconds(2);
+
+    /**
+     * Size of a <code>queryPerf</code> response above which the batch size is reduced
+     */
+    @JsonProperty
+    @NotNull
+    private Size maxQueryResponseSize = Size.megabytes(4);
+
+    /**
+     * Duration after which a request to the end point is abandoned
+     */
+    @JsonProperty
+    @NotNull
+    private Duration requestTimeout = Duration.minutes(2);
+
+    /**
+     * Format of the performance statistics returned by the end point
+     */
+    @JsonProperty
+    @NotNull
+    private PerfQueryFormat queryFormat = PerfQueryFormat.normal;
+
+    /**
+     * Maximum number of queries that are run concurrently against the end point
+     */
+    @JsonProperty
+    @Min(1)
+    private int maxQueriesInFlight = DEFAULT_MAX_QUERIES_IN_FLIGHT;
+
+    /**
+     * Maximum number of entries in the cache of available performance counters, 0 disables the cache
+     */
+    @JsonProperty
+    @Min(0)
+    private long availabilityCacheSize = DEFAULT_AVAILABILITY_CACHE_SIZE;
+
+    /**
+     * Time after which the available performance counters of a managed object are queried again
+     */
+    @JsonProperty
+    @NotNull
+    private Duration availabilityCacheTtl = Duration.minutes(30);
+
+    /**
+     * Whether available performance counters are tracked per managed object or per managed object type
+     */
+    @JsonProperty
+    @NotNull
+    private PerfMetricAvailabilityCache.Scope availabilityScope = PerfMetricAvailabilityCache.Scope.entity;
+
+    /**
+     * Oldest point in time, relative to the end point time, that missed windows are backfilled from
+     */
+    @JsonProperty
+    @NotNull
+    private Duration maxBackfill = Duration.hours(1);
+
+    /**
+     * Length of the window queried by a single backfill step
+     */
+    @JsonProperty
+    @NotNull
+    private Duration backfillChunk = Duration.minutes(10);
+
+    /**
+     * Number of backfill windows queried after each poll, 0 disables backfill
+     */
+    @JsonProperty
+    @Min(0)
+    private int backfillChunksPerPoll = 1;
+
+    /**
+     * Track the inventory incrementally in the background instead of walking it every poll
+     */
+    @JsonProperty
+    private boolean trackInventory = false;
+
+    /**
+     * Maximum number of managed objects in each page of an inventory walk
+     */
+    @JsonProperty
+    @Min(1)
+    private int inventoryPageSize = 1000;
+
+    /**
+     * Query the realtime statistics of virtual machines from their ESXi host instead of through vCenter
+     */
+    @JsonProperty
+    private boolean directHostCollection = false;
+
+    /**
+     * Name used to authenticate to the ESXi hosts, the name of the monitored entity when not set
+     */
+    @JsonProperty
+    private String hostUsername;
+
+    /**
+     * Password used to authenticate to the ESXi hosts, the password of the monitored entity when not set
+     */
+    @JsonProperty
+    private String hostPassword;
+
+    /**
+     * Inventory paths of the containers managed objects are discovered in, the whole inventory when empty
+     */
+    @JsonProperty
+    @NotNull
+    private List<String> inventoryPaths = ImmutableList.of();
+
+    /**
+     * Interval at which the performance counters and the catalog are checked for changes, 0 disables the checks
+     */
+    @JsonProperty
+    @NotNull
+    private Duration metadataRefreshInterval = Duration.minutes(10);
     
     /**
      * Map of VMware performance counter full names to Boundary metric descriptions
@@ -123,6 +315,244 @@ public class MonitoredEntity {
 		return catalog;
     }
 
+    /**
+     * Returns the initial number of managed objects to include in each performance query
+     * 
+     * @return {@link int}
+     */
+    public int getQueryBatchSize() {
+        return queryBatchSize;
+    }
+
+    /**
+     * Returns the smallest number of managed objects to include in each performance query
+     * 
+     * @return {@link int}
+     */
+    public int getMinQueryBatchSize() {
+        return minQueryBatchSize;
+    }
+
+    /**
+     * Returns the largest number of managed objects to include in each performance query
+     * 
+     * @return {@link int}
+     */
+    public int getMaxQueryBatchSize() {
+        return maxQueryBatchSize;
+    }
+
+    /**
+     * Returns the duration of a performance query above which the batch size is reduced
+     * 
+     * @return {@link Duration}
+     */
+    public Duration getTargetQueryLatency() {
+        return targetQueryLatency;
+    }
+
+    /**
+     * Returns the size of a performance query response above which the batch size is reduced
+     * 
+     * @return {@link Size}
+     */
+    public Size getMaxQueryResponseSize() {
+        return maxQueryResponseSize;
+    }
+
+    /**
+     * Returns the duration after which a request to the end point is abandoned
+     * 
+     * @return {@link Duration}
+     */
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Returns the format of the performance statistics requested from the end point
+     * 
+     * @return {@link PerfQueryFormat}
+     */
+    public PerfQueryFormat getQueryFormat() {
+        return queryFormat;
+    }
+
+    /**
+     * Returns the maximum number of queries run concurrently against the end point
+     * 
+     * @return {@link int}
+     */
+    public int getMaxQueriesInFlight() {
+        return maxQueriesInFlight;
+    }
+
+    /**
+     * Returns the maximum number of entries in the cache of available performance counters
+     * 
+     * @return {@link long}
+     */
+    public long getAvailabilityCacheSize() {
+        return availabilityCacheSize;
+    }
+
+    /**
+     * Returns the time after which available performance counters are queried again
+     * 
+     * @return {@link Duration}
+     */
+    public Duration getAvailabilityCacheTtl() {
+        return availabilityCacheTtl;
+    }
+
+    /**
+     * Returns the granularity at which available performance counters are tracked
+     * 
+     * @return {@link PerfMetricAvailabilityCache.Scope}
+     */
+    public PerfMetricAvailabilityCache.Scope getAvailabilityScope() {
+        return availabilityScope;
+    }
+
+    /**
+     * Returns how far back from the end point time missed windows are backfilled
+     * 
+     * @return {@link Duration}
+     */
+    public Duration getMaxBackfill() {
+        return maxBackfill;
+    }
+
+    /**
+     * Returns the length of the window queried by a single backfill step
+     * 
+     * @return {@link Duration}
+     */
+    public Duration getBackfillChunk() {
+        return backfillChunk;
+    }
+
+    /**
+     * Returns the number of backfill windows queried after each poll
+     * 
+     * @return {@link int}
+     */
+    public int getBackfillChunksPerPoll() {
+        return backfillChunksPerPoll;
+    }
+
+    /**
+     * Returns true if the inventory is tracked incrementally in the background
+     * 
+     * @return {@link boolean}
+     */
+    public boolean isTrackInventory() {
+        return trackInventory;
+    }
+
+    /**
+     * Returns the maximum number of managed objects in each page of an inventory walk,
+     * the queries of a page are started while the next page is retrieved
+     * 
+     * @return {@link int}
+     */
+    public int getInventoryPageSize() {
+        return inventoryPageSize;
+    }
+
+    /**
+     * Returns true if the realtime statistics of virtual machines are queried from their
+     * ESXi host, which requires the monitored entity to be a vCenter
+     * 
+     * @return {@link boolean}
+     */
+    public boolean isDirectHostCollection() {
+        return directHostCollection;
+    }
+
+    /**
+     * Returns the name used to authenticate to the ESXi hosts
+     * 
+     * @return {@link String}
+     */
+    public String getHostUsername() {
+        return hostUsername != null ? hostUsername : username;
+    }
+
+    /**
+     * Returns the password used to authenticate to the ESXi hosts
+     * 
+     * @return {@link String}
+     */
+    public String getHostPassword() {
+        return hostPassword != null ? hostPassword : password;
+    }
+
+    /**
+     * Returns the inventory paths of the containers managed objects are discovered in, such as
+     * <code>Datacenter/host/Cluster</code>, which catalog entries can override
+     * 
+     * @return Immutable {@link List} of inventory paths, empty to discover the whole inventory
+     */
+    public List<String> getInventoryPaths() {
+        return ImmutableList.copyOf(inventoryPaths);
+    }
+
+    /**
+     * Returns the inventory paths hosts are discovered in. Paths of host folders and clusters are kept,
+     * paths under the virtual machine, datastore or network folder of a datacenter are replaced by the
+     * host folder of the datacenter so that the hosts of their managed objects are known.
+     * 
+     * @return {@link List} of inventory paths, empty to discover the whole inventory
+     */
+    public List<String> getHostInventoryPaths() {
+        Set<String> hostPaths = new LinkedHashSet<String>();
+        for (String path : inventoryPaths) {
+            hostPaths.add(getHostInventoryPath(path));
+        }
+        // Paths under another path would discover their hosts twice
+        ImmutableList.Builder<String> distinct = ImmutableList.builder();
+        for (String path : hostPaths) {
+            boolean nested = false;
+            for (String other : hostPaths) {
+                nested |= path.startsWith(other + "/");
+            }
+            if (!nested) {
+                distinct.add(path);
+            }
+        }
+        return distinct.build();
+    }
+
+    /**
+     * Returns the inventory path of the hosts of the managed objects under a path
+     * 
+     * @param path Inventory path such as <code>Datacenter/vm/Folder</code>
+     * @return Path of the host folder of the datacenter, the path itself if it is not under another folder of a datacenter
+     */
+    static String getHostInventoryPath(String path) {
+        List<String> segments = Splitter.on('/').splitToList(path);
+        for (int i = 1; i < segments.size(); i++) {
+            if (HOST_FOLDER.equals(segments.get(i))) {
+                return path;
+            }
+            if (DATACENTER_FOLDERS.contains(segments.get(i))) {
+                return Joiner.on('/').join(segments.subList(0,i)) + "/" + HOST_FOLDER;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Returns the interval at which the performance counters of the end point and the catalog
+     * are checked for changes while collecting
+     * 
+     * @return {@link Duration}, 0 to only load them on startup
+     */
+    public Duration getMetadataRefreshInterval() {
+        return metadataRefreshInterval;
+    }
+
     /**
      * Returns the metrics associatd with this monitored entity
      * @return {@link Map}
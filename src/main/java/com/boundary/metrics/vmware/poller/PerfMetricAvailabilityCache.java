@@ -0,0 +1,196 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.PerfMetricId;
+
+/**
+ * Caches the performance counters that managed objects make available, as reported
+ * by <code>queryAvailablePerfMetric</code>, so that only counters that exist on a
+ * managed object are requested from it.
+ *
+ * Entries are loaded lazily on first use, through the client of the caller, and expire
+ * after a configurable time to live.
+ * Availability is either tracked for each managed object or once for all managed
+ * objects of the same type.
+ */
+public class PerfMetricAvailabilityCache implements MetricSet {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PerfMetricAvailabilityCache.class);
+
+	/**
+	 * Granularity at which performance counter availability is tracked
+	 */
+	public enum Scope {
+		entity, type;
+	}
+
+	private final String host;
+	private final Scope scope;
+	private final Cache<String,SetMultimap<Integer,String>> cache;
+
+	/**
+	 * Constructor
+	 *
+	 * @param host Host name of the end point whose performance counters are cached
+	 * @param scope {@link Scope} whether availability is tracked per managed object or per type
+	 * @param maximumSize Maximum number of entries held by the cache
+	 * @param timeToLive Time in milliseconds after which an entry is queried again
+	 */
+	public PerfMetricAvailabilityCache(String host,Scope scope,long maximumSize,long timeToLive) {
+		this.host = host;
+		this.scope = scope;
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(timeToLive,TimeUnit.MILLISECONDS)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Returns the subset of the requested performance metrics that are available
+	 * on the managed object. If availability cannot be determined the requested
+	 * performance metrics are returned unchanged.
+	 *
+	 * @param vmwClient {@link VMwareClient} of the caller, used to query the available performance counters
+	 * @param mor {@link ManagedObjectReference} to be queried
+	 * @param intervalId Sampling interval of the query
+	 * @param perfMetricIds {@link List} of requested {@link PerfMetricId}
+	 * @return {@link List} of {@link PerfMetricId}
+	 */
+	public List<PerfMetricId> prune(VMwareClient vmwClient,ManagedObjectReference mor,Integer intervalId,
+			List<PerfMetricId> perfMetricIds) {
+		return prune(vmwClient,mor,intervalId,perfMetricIds,null);
+	}
+
+	/**
+	 * Returns the subset of the requested performance metrics that are available
+	 * on the managed object. When availability is tracked per managed object, the
+	 * performance metrics of a regular expression filter are narrowed down to the
+	 * available instances that match it, so that only those series are returned.
+	 *
+	 * @param vmwClient {@link VMwareClient} of the caller, used to query the available performance counters
+	 * @param mor {@link ManagedObjectReference} to be queried
+	 * @param intervalId Sampling interval of the query
+	 * @param perfMetricIds {@link List} of requested {@link PerfMetricId}
+	 * @param filter {@link InstanceFilter} of the managed object type, may be null
+	 * @return {@link List} of {@link PerfMetricId}
+	 */
+	public List<PerfMetricId> prune(VMwareClient vmwClient,ManagedObjectReference mor,Integer intervalId,
+			List<PerfMetricId> perfMetricIds,InstanceFilter filter) {
+		SetMultimap<Integer,String> available = getAvailable(vmwClient,mor,intervalId);
+		if (available == null) {
+			return perfMetricIds;
+		}
+
+		// Instances differ between managed objects of a type, they can only be narrowed down per managed object
+		boolean expand = filter != null && filter.isPattern() && scope == Scope.entity;
+		List<PerfMetricId> pruned = new ArrayList<PerfMetricId>(perfMetricIds.size());
+		for (PerfMetricId id : perfMetricIds) {
+			if (!available.containsKey(id.getCounterId())) {
+				continue;
+			}
+			if (expand) {
+				for (String instance : available.get(id.getCounterId())) {
+					if (filter.matches(instance)) {
+						PerfMetricId instanceId = new PerfMetricId();
+						instanceId.setCounterId(id.getCounterId());
+						instanceId.setInstance(instance);
+						pruned.add(instanceId);
+					}
+				}
+			} else {
+				pruned.add(id);
+			}
+		}
+		if (pruned.size() < perfMetricIds.size()) {
+			LOG.debug("Requesting {} of {} performance counters from {}",pruned.size(),perfMetricIds.size(),mor.getValue());
+		}
+		return pruned;
+	}
+
+	/**
+	 * Returns the available performance counters of a managed object and their instances
+	 *
+	 * @param vmwClient {@link VMwareClient} of the caller, used to query the available performance counters
+	 * @param mor {@link ManagedObjectReference}
+	 * @param intervalId Sampling interval of the query
+	 * @return {@link SetMultimap} of counter id to instances, or null if availability could not be determined
+	 */
+	public SetMultimap<Integer,String> getAvailable(final VMwareClient vmwClient,final ManagedObjectReference mor,final Integer intervalId) {
+		String key = scope == Scope.type
+				? mor.getType() + ":" + intervalId
+				: mor.getType() + ":" + mor.getValue() + ":" + intervalId;
+		try {
+			return cache.get(key,new Callable<SetMultimap<Integer,String>>() {
+				@Override
+				public SetMultimap<Integer,String> call() throws Exception {
+					ImmutableSetMultimap.Builder<Integer,String> available = ImmutableSetMultimap.builder();
+					for (PerfMetricId id : vmwClient.getAvailablePerfMetrics(mor,intervalId)) {
+						available.put(id.getCounterId(),id.getInstance());
+					}
+					return available.build();
+				}
+			});
+		} catch (ExecutionException e) {
+			LOG.warn("Unable to query available performance counters of {} from {}: {}",
+					mor.getValue(),vmwClient.getName(),e.getCause().getMessage());
+			return null;
+		}
+	}
+
+	@Override
+	public Map<String, Metric> getMetrics() {
+		return ImmutableMap.<String,Metric>of(
+				MetricRegistry.name(getClass(), "hits", host), new Gauge<Long>() {
+					@Override
+					public Long getValue() {
+						return cache.stats().hitCount();
+					}
+				},
+				MetricRegistry.name(getClass(), "misses", host), new Gauge<Long>() {
+					@Override
+					public Long getValue() {
+						return cache.stats().missCount();
+					}
+				},
+				MetricRegistry.name(getClass(), "size", host), new Gauge<Long>() {
+					@Override
+					public Long getValue() {
+						return cache.size();
+					}
+				});
+	}
+}
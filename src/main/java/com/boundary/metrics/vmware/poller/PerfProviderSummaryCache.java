@@ -0,0 +1,158 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.connection.helpers.GetMOREF;
+import com.vmware.vim25.ArrayOfPerfInterval;
+import com.vmware.vim25.InvalidPropertyFaultMsg;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.PerfInterval;
+import com.vmware.vim25.PerfProviderSummary;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+
+/**
+ * Caches the result of <code>queryPerfProviderSummary</code> for each managed object type
+ * to determine which sampling interval the managed objects of the type are queried with.
+ * <ul>
+ * <li>Types that support current (real-time) statistics are queried at their refresh rate</li>
+ * <li>Types that only support summary statistics are queried at the shortest enabled historical interval</li>
+ * <li>Types that support neither are not queried</li>
+ * </ul>
+ */
+public class PerfProviderSummaryCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PerfProviderSummaryCache.class);
+
+	/**
+	 * Historical interval used when the intervals of the end point cannot be determined
+	 */
+	public static final int DEFAULT_HISTORICAL_INTERVAL = 300;
+
+	private final VMwareClient vmwClient;
+	private final ConcurrentMap<String,PerfProviderSummary> summaries = new ConcurrentHashMap<String,PerfProviderSummary>();
+	private volatile Integer historicalInterval;
+
+	/**
+	 * Constructor
+	 *
+	 * @param vmwClient {@link VMwareClient} used to query the provider summaries
+	 */
+	public PerfProviderSummaryCache(VMwareClient vmwClient) {
+		this.vmwClient = vmwClient;
+	}
+
+	/**
+	 * Returns the provider summary of the type of the managed object, querying
+	 * the end point with the managed object the first time the type is seen.
+	 *
+	 * @param mor {@link ManagedObjectReference}
+	 * @return {@link PerfProviderSummary}
+	 * @throws RuntimeFaultFaultMsg Runtime error
+	 */
+	public PerfProviderSummary getSummary(ManagedObjectReference mor) throws RuntimeFaultFaultMsg {
+		PerfProviderSummary summary = summaries.get(mor.getType());
+		if (summary == null) {
+			summary = vmwClient.getProviderSummary(mor);
+			LOG.info("{}: {} current statistics supported: {}, summary statistics supported: {}, refresh rate: {}",
+					vmwClient.getName(),mor.getType(),
+					summary.isCurrentSupported(),summary.isSummarySupported(),summary.getRefreshRate());
+			summaries.putIfAbsent(mor.getType(),summary);
+		}
+		return summary;
+	}
+
+	/**
+	 * Returns the sampling interval to query the managed object with.
+	 *
+	 * @param mor {@link ManagedObjectReference}
+	 * @return Sampling interval in seconds, null if the type provides no statistics
+	 * @throws RuntimeFaultFaultMsg Runtime error
+	 */
+	public Integer getIntervalId(ManagedObjectReference mor) throws RuntimeFaultFaultMsg {
+		PerfProviderSummary summary = getSummary(mor);
+		Integer intervalId = null;
+
+		if (summary.isCurrentSupported() && summary.getRefreshRate() != null && summary.getRefreshRate() > 0) {
+			intervalId = summary.getRefreshRate();
+		} else if (summary.isSummarySupported()) {
+			intervalId = getHistoricalInterval();
+		}
+		return intervalId;
+	}
+
+	/**
+	 * Returns the sampling interval to query the managed object with in a collection lane.
+	 * 
+	 * @param mor {@link ManagedObjectReference}
+	 * @param lane {@link CollectionLane} the managed object is collected in
+	 * @return Sampling interval in seconds, null if the type provides no statistics for the lane
+	 * @throws RuntimeFaultFaultMsg Runtime error
+	 */
+	public Integer getIntervalId(ManagedObjectReference mor,CollectionLane lane) throws RuntimeFaultFaultMsg {
+		PerfProviderSummary summary = getSummary(mor);
+		Integer intervalId = null;
+
+		switch (lane) {
+		case realtime:
+			if (summary.isCurrentSupported() && summary.getRefreshRate() != null && summary.getRefreshRate() > 0) {
+				intervalId = summary.getRefreshRate();
+			}
+			break;
+		case historical:
+			if (summary.isSummarySupported()) {
+				intervalId = getHistoricalInterval();
+			}
+			break;
+		}
+		return intervalId;
+	}
+
+	/**
+	 * Returns the shortest enabled historical interval of the performance manager
+	 *
+	 * @return Sampling period in seconds
+	 */
+	public int getHistoricalInterval() {
+		if (historicalInterval == null) {
+			int shortest = Integer.MAX_VALUE;
+			try {
+				GetMOREF getMOREF = new GetMOREF(vmwClient);
+				Map<String,Object> properties = getMOREF.entityProps(vmwClient.getServiceContent().getPerfManager(),
+						new String[] {"historicalInterval"});
+				ArrayOfPerfInterval intervals = (ArrayOfPerfInterval) properties.get("historicalInterval");
+				if (intervals != null) {
+					for (PerfInterval interval : intervals.getPerfInterval()) {
+						if (interval.isEnabled() && interval.getSamplingPeriod() < shortest) {
+							shortest = interval.getSamplingPeriod();
+						}
+					}
+				}
+			} catch (InvalidPropertyFaultMsg e) {
+				LOG.warn("{}: Unable to fetch historical intervals, using {}s",vmwClient.getName(),DEFAULT_HISTORICAL_INTERVAL);
+			} catch (RuntimeFaultFaultMsg e) {
+				LOG.warn("{}: Unable to fetch historical intervals, using {}s",vmwClient.getName(),DEFAULT_HISTORICAL_INTERVAL);
+			}
+			historicalInterval = shortest == Integer.MAX_VALUE ? DEFAULT_HISTORICAL_INTERVAL : shortest;
+		}
+		return historicalInterval;
+	}
+}
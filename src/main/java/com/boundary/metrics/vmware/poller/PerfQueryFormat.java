@@ -0,0 +1,26 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+/**
+ * Format of the performance statistics returned by <code>queryPerf</code>
+ * <ul>
+ * <li>normal - samples are returned as lists of values</li>
+ * <li>csv - samples are returned as comma separated strings</li>
+ * </ul>
+ */
+public enum PerfQueryFormat {
+	normal, csv;
+}
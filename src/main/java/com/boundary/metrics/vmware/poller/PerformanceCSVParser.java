@@ -0,0 +1,128 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.vmware.vim25.PerfEntityMetricCSV;
+import com.vmware.vim25.PerfMetricSeriesCSV;
+
+/**
+ * Parses the comma separated values returned by <code>queryPerf</code> when the
+ * <em>csv</em> format is requested ({@link PerfEntityMetricCSV} and {@link PerfMetricSeriesCSV}).
+ * 
+ * Values are scanned in place and written directly into primitive arrays
+ * so no intermediate strings or boxed values are created per sample.
+ */
+public class PerformanceCSVParser {
+	
+	private static final DateTimeFormatter TIMESTAMP_PARSER = ISODateTimeFormat.dateTimeParser().withOffsetParsed();
+	
+	private static final long[] EMPTY = new long[0];
+	
+	private PerformanceCSVParser() { /* static class */ }
+	
+	/**
+	 * Parses the values of a {@link PerfMetricSeriesCSV}, e.g. <code>120,-1,315</code>
+	 * 
+	 * @param csv Comma separated sample values
+	 * @return {@link long} array with one element per sample
+	 * @throws IllegalArgumentException if a value is empty or not an optionally signed integer
+	 */
+	public static long[] parseValues(String csv) {
+		if (csv == null || csv.isEmpty()) {
+			return EMPTY;
+		}
+		
+		final int length = csv.length();
+		long[] values = new long[countFields(csv)];
+		int index = 0;
+		int fieldStart = 0;
+		int digits = 0;
+		long value = 0;
+		boolean negative = false;
+		
+		for (int i = 0; i < length; i++) {
+			char c = csv.charAt(i);
+			if (c == ',') {
+				if (digits == 0) {
+					throw new IllegalArgumentException("Missing value at position " + i + " in: " + csv);
+				}
+				values[index++] = negative ? -value : value;
+				fieldStart = i + 1;
+				digits = 0;
+				value = 0;
+				negative = false;
+			} else if (c == '-' && i == fieldStart) {
+				negative = true;
+			} else if (c >= '0' && c <= '9') {
+				value = value * 10 + (c - '0');
+				digits++;
+			} else {
+				throw new IllegalArgumentException("Unexpected character '" + c + "' at position " + i + " in: " + csv);
+			}
+		}
+		if (digits == 0) {
+			throw new IllegalArgumentException("Missing value at position " + length + " in: " + csv);
+		}
+		values[index] = negative ? -value : value;
+		
+		return values;
+	}
+	
+	/**
+	 * Parses the sample information of a {@link PerfEntityMetricCSV} which consists of
+	 * interval and timestamp pairs, e.g. <code>20,2014-10-01T12:00:20Z,20,2014-10-01T12:00:40Z</code>
+	 * 
+	 * @param sampleInfoCSV Comma separated sample information
+	 * @return {@link long} array of sample timestamps in milliseconds since the epoch
+	 */
+	public static long[] parseTimestamps(String sampleInfoCSV) {
+		if (sampleInfoCSV == null || sampleInfoCSV.isEmpty()) {
+			return EMPTY;
+		}
+		
+		int fields = countFields(sampleInfoCSV);
+		if (fields % 2 != 0) {
+			throw new IllegalArgumentException("Sample information is not interval and timestamp pairs: " + sampleInfoCSV);
+		}
+		
+		long[] timestamps = new long[fields / 2];
+		int start = 0;
+		for (int i = 0; i < timestamps.length; i++) {
+			// Skip over the interval
+			start = sampleInfoCSV.indexOf(',',start) + 1;
+			int end = sampleInfoCSV.indexOf(',',start);
+			if (end < 0) {
+				end = sampleInfoCSV.length();
+			}
+			timestamps[i] = TIMESTAMP_PARSER.parseMillis(sampleInfoCSV.substring(start,end));
+			start = end + 1;
+		}
+		
+		return timestamps;
+	}
+	
+	private static int countFields(String csv) {
+		int fields = 1;
+		for (int i = 0; i < csv.length(); i++) {
+			if (csv.charAt(i) == ',') {
+				fields++;
+			}
+		}
+		return fields;
+	}
+}
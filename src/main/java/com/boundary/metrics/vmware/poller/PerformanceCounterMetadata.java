@@ -15,6 +15,7 @@
 package com.boundary.metrics.vmware.poller;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,31 +23,28 @@ import javax.annotation.Nullable;
 
 import com.boundary.metrics.vmware.client.metrics.Metric;
 import com.google.common.base.Function;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.vmware.vim25.PerfCounterInfo;
 import com.vmware.vim25.PerfMetricId;
 
 /**
- * Contains all of the Performance Counter Metadata
+ * Contains all of the Performance Counter Metadata.
+ * 
+ * Counters are added as they are fetched and frozen into a {@link PerformanceCounterRegistry} on first
+ * lookup, which is reused until another counter is added.
  */
 public class PerformanceCounterMetadata {
 	
 
 	
-	private ImmutableMap.Builder<Integer,PerfCounterInfo> infoMap;
-	private ImmutableMap.Builder<String,Integer> nameMap;
-
-	private List<PerfMetricId> performanceMetricIds;
+	private final Map<Integer,PerfCounterInfo> counters;
+	private volatile PerformanceCounterRegistry registry;
 	
 	/**
-	 * Constructore
-	 * @param infoMap Mapping of performance counter id and {@link PerfCounterInfo}
-	 * @param nameMap Mapping
+	 * Constructor
 	 */
 	public PerformanceCounterMetadata() {
-		this.infoMap = ImmutableMap.builder();
-		this.nameMap = ImmutableMap.builder();
+		this.counters = new LinkedHashMap<Integer,PerfCounterInfo>();
 	}
 	
 	/**
@@ -54,13 +52,31 @@ public class PerformanceCounterMetadata {
 	 * 
 	 * @param counterInfo {@link PerfCounterInfo}
 	 */
-	public void put(PerfCounterInfo counterInfo) {
-		infoMap.put(counterInfo.getKey(),counterInfo);
-		nameMap.put(toFullName(counterInfo), counterInfo.getKey());
+	public synchronized void put(PerfCounterInfo counterInfo) {
+		counters.put(counterInfo.getKey(),counterInfo);
+		registry = null;
+	}
+
+	/**
+	 * Returns the frozen registry of the collection, built once after the last counter was added
+	 * 
+	 * @return {@link PerformanceCounterRegistry}
+	 */
+	public PerformanceCounterRegistry getRegistry() {
+		PerformanceCounterRegistry frozen = registry;
+		if (frozen == null) {
+			synchronized (this) {
+				if (registry == null) {
+					registry = PerformanceCounterRegistry.of(counters.values());
+				}
+				frozen = registry;
+			}
+		}
+		return frozen;
 	}
 
 	public Map<String,Integer> getNameMap() {
-		return nameMap.build();
+		return getRegistry().getNameMap();
 	}
 	
 	/**
@@ -70,7 +86,7 @@ public class PerformanceCounterMetadata {
 	 * @return Contents of the collection 
 	 */
 	public Map<Integer,PerfCounterInfo> getInfoMap() {
-		return infoMap.build();
+		return getRegistry().getInfoMap();
 	}
 	
 	/**
@@ -80,19 +96,31 @@ public class PerformanceCounterMetadata {
 	 * @return {@link List} of {@link PerfMetricId} instances
 	 */
 	public List<PerfMetricId> getPerformanceMetricIds(Map<String, MetricDefinition> metrics) {
-		Map<String,Integer> nameMap = this.getNameMap();
-		this.performanceMetricIds = new ArrayList<PerfMetricId>();
+		return getPerformanceMetricIds(metrics,InstanceFilter.ALL_INSTANCES);
+	}
+
+	/**
+	 * Returns a list of {@link PerfMetricId}s which are used to identify metrics to collect.
+	 * 
+	 * @param metrics {@link Map} Mapping of performance counter name to {@link MetricDefinition}
+	 * @param instance Instance to request, <code>""</code> for the aggregate or <code>"*"</code> for all instances
+	 * @return {@link List} of {@link PerfMetricId} instances
+	 */
+	public List<PerfMetricId> getPerformanceMetricIds(Map<String, MetricDefinition> metrics,String instance) {
+		PerformanceCounterRegistry registry = this.getRegistry();
+		List<PerfMetricId> performanceMetricIds = new ArrayList<PerfMetricId>();
 		
 		for (String counterName : metrics.keySet()) {
-			if (nameMap.containsKey(counterName)) {
+			Integer counterId = registry.getId(counterName);
+			if (counterId != null) {
 				PerfMetricId metricId = new PerfMetricId();
 				// Get the ID for this counter.
-				metricId.setCounterId(nameMap.get(counterName));
-				metricId.setInstance("*");
+				metricId.setCounterId(counterId);
+				metricId.setInstance(instance);
 				performanceMetricIds.add(metricId);
 			}
 		}
-		return this.performanceMetricIds;
+		return performanceMetricIds;
 	}
 	
 	 /**
@@ -103,16 +131,8 @@ public class PerformanceCounterMetadata {
      * @return {@link Number} New value
      */
     public static Number computeValue(PerfCounterInfo metricInfo,Number value) {
-    	String key = metricInfo.getUnitInfo().getKey();
-    	if (key.equalsIgnoreCase("kiloBytes")) {
-    		// Convert kilobytes to bytes
-			value = (long) value * 1024; 
-														
-		} else if (key.equalsIgnoreCase("percent")) {
-			// Convert hundredth of a percent to a decimal percent
-			value = new Long((long) value).doubleValue() / 10000.0;
-		}
-    	return value;
+    	CounterDispatch.Scale scale = CounterDispatch.Scale.of(metricInfo.getUnitInfo().getKey());
+    	return scale == CounterDispatch.Scale.NONE ? value : scale.apply(value.longValue());
     }
 	
 	/**
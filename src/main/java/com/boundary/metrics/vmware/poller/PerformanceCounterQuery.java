@@ -16,6 +16,7 @@ package com.boundary.metrics.vmware.poller;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.joda.time.DateTime;
@@ -32,10 +33,12 @@ public class PerformanceCounterQuery {
 	
 	private VMwareClient vmwareClient;
 	private VMWareMetadata metadata;
+	private PerfProviderSummaryCache summaries;
 
 	PerformanceCounterQuery(VMwareClient vmwareClient, VMWareMetadata metadata) {
         this.vmwareClient = checkNotNull(vmwareClient);
         this.metadata = metadata;
+        this.summaries = new PerfProviderSummaryCache(vmwareClient);
 	}
 	
 	List<Measurement> queryCounters(ManagedObjectReference mor,DateTime start,DateTime end) throws RuntimeFaultFaultMsg {
@@ -47,7 +50,14 @@ public class PerformanceCounterQuery {
 		// configuration, we can form unique names that way
 		String source = vmwareClient.getName() + "-" + entityName;
 		LOG.info("Get measurements for \"{}\"",source);
-        measurements = vmwareClient.getMeasurements(mor,entityName,source,new Integer(20),start,end,metadata);
+
+		// Query at the interval supported by the type of managed object
+		Integer intervalId = summaries.getIntervalId(mor);
+		if (intervalId == null) {
+			LOG.warn("{} does not provide performance statistics",source);
+			return new ArrayList<Measurement>();
+		}
+        measurements = vmwareClient.getMeasurements(mor,entityName,source,intervalId,start,end,metadata);
         
         return measurements;
 	}
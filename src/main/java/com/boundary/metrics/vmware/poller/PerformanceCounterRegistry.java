@@ -0,0 +1,124 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import java.util.Collection;
+
+import com.google.common.collect.ImmutableMap;
+import com.vmware.vim25.PerfCounterInfo;
+
+/**
+ * Immutable registry of the performance counters of an end point, frozen once the counters are fetched.
+ *
+ * Counters are held in an array indexed by their counter id, which the end point assigns densely from a
+ * small base, along with a hash of counter full name to id, so the counter of each series of a query
+ * response is looked up without copying or allocating. Counter ids beyond {@link #MAX_DENSE_ID} are
+ * only held in the map of counter id to {@link PerfCounterInfo}.
+ */
+public class PerformanceCounterRegistry {
+
+	/**
+	 * Largest counter id held in the array
+	 */
+	static final int MAX_DENSE_ID = 65535;
+
+	private final PerfCounterInfo[] counters;
+	private final ImmutableMap<Integer,PerfCounterInfo> infoMap;
+	private final ImmutableMap<String,Integer> nameMap;
+
+	private PerformanceCounterRegistry(PerfCounterInfo[] counters,ImmutableMap<Integer,PerfCounterInfo> infoMap,
+			ImmutableMap<String,Integer> nameMap) {
+		this.counters = counters;
+		this.infoMap = infoMap;
+		this.nameMap = nameMap;
+	}
+
+	/**
+	 * Builds the registry of performance counters, each id and full name is expected once
+	 *
+	 * @param counterInfos {@link PerfCounterInfo} of each performance counter
+	 * @return {@link PerformanceCounterRegistry}
+	 */
+	public static PerformanceCounterRegistry of(Collection<PerfCounterInfo> counterInfos) {
+		int maxId = -1;
+		for (PerfCounterInfo counterInfo : counterInfos) {
+			if (counterInfo.getKey() <= MAX_DENSE_ID) {
+				maxId = Math.max(maxId,counterInfo.getKey());
+			}
+		}
+		PerfCounterInfo[] counters = new PerfCounterInfo[maxId + 1];
+		ImmutableMap.Builder<Integer,PerfCounterInfo> infoMap = ImmutableMap.builder();
+		ImmutableMap.Builder<String,Integer> nameMap = ImmutableMap.builder();
+		for (PerfCounterInfo counterInfo : counterInfos) {
+			int id = counterInfo.getKey();
+			if (id >= 0 && id < counters.length) {
+				counters[id] = counterInfo;
+			}
+			infoMap.put(id,counterInfo);
+			nameMap.put(PerformanceCounterMetadata.toFullName(counterInfo),id);
+		}
+		return new PerformanceCounterRegistry(counters,infoMap.build(),nameMap.build());
+	}
+
+	/**
+	 * Returns the performance counter with an id
+	 *
+	 * @param counterId Counter id
+	 * @return {@link PerfCounterInfo}, null if the end point has no such counter
+	 */
+	public PerfCounterInfo getInfo(int counterId) {
+		if (counterId >= 0 && counterId < counters.length) {
+			return counters[counterId];
+		}
+		return counterId > MAX_DENSE_ID ? infoMap.get(counterId) : null;
+	}
+
+	/**
+	 * Returns the id of the performance counter with a full name
+	 *
+	 * @param fullName Full name of the counter, <code>group.name.ROLLUP</code>
+	 * @return {@link Integer}, null if the end point has no such counter
+	 */
+	public Integer getId(String fullName) {
+		return nameMap.get(fullName);
+	}
+
+	/**
+	 * Returns the number of performance counters
+	 *
+	 * @return {@link int}
+	 */
+	public int size() {
+		return infoMap.size();
+	}
+
+	/**
+	 * Returns the performance counters by id
+	 *
+	 * @return {@link ImmutableMap} of counter id to {@link PerfCounterInfo}
+	 */
+	public ImmutableMap<Integer,PerfCounterInfo> getInfoMap() {
+		return infoMap;
+	}
+
+	/**
+	 * Returns the ids of the performance counters by full name
+	 *
+	 * @return {@link ImmutableMap} of counter full name to id
+	 */
+	public ImmutableMap<String,Integer> getNameMap() {
+		return nameMap;
+	}
+}
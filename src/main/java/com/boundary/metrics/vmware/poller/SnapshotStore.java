@@ -0,0 +1,110 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Persists an {@link EndpointSnapshot} of each end point to a JSON file of a local directory,
+ * named after the instance UUID of the end point so that a renamed end point keeps its snapshot.
+ * The lanes of an end point save to the same snapshot, each replacing its own managed objects only.
+ *
+ * As with the {@link WatermarkStore} a snapshot is written to a temporary file that is renamed
+ * over the previous one, so a crash never leaves a partially written snapshot behind.
+ */
+public class SnapshotStore {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SnapshotStore.class);
+
+	private final File directory;
+	private final ObjectMapper mapper = new ObjectMapper();
+	// Last snapshot saved for each key, whose managed objects of other lanes are kept by the next save
+	private final Map<String,EndpointSnapshot> saved = new HashMap<String,EndpointSnapshot>();
+
+	/**
+	 * Constructor, creates the directory if it does not exist
+	 *
+	 * @param directory {@link File} holding the snapshots
+	 */
+	public SnapshotStore(File directory) {
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			LOG.warn("Unable to create snapshot directory {}",directory);
+		}
+	}
+
+	/**
+	 * Loads a snapshot
+	 *
+	 * @param key Identifier of the end point
+	 * @return {@link EndpointSnapshot} or null if there is no readable snapshot for the key
+	 */
+	public EndpointSnapshot load(String key) {
+		File file = getFile(key);
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			EndpointSnapshot snapshot = mapper.readValue(file,EndpointSnapshot.class);
+			LOG.info("Loaded snapshot {} taken at {}",file,snapshot.getCreated());
+			return snapshot;
+		} catch (IOException e) {
+			LOG.warn("Unable to load snapshot from {}: {}",file,e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Saves a snapshot, replacing the previous snapshot of the key but keeping the managed objects
+	 * of the lanes the snapshot does not hold
+	 *
+	 * @param key Identifier of the end point
+	 * @param snapshot {@link EndpointSnapshot}
+	 */
+	public synchronized void save(String key,EndpointSnapshot snapshot) {
+		EndpointSnapshot previous = saved.containsKey(key) ? saved.get(key) : load(key);
+		if (previous != null) {
+			snapshot.keepInventories(previous);
+		}
+		saved.put(key,snapshot);
+		File file = getFile(key);
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			mapper.writeValue(temp,snapshot);
+			if (!temp.renameTo(file)) {
+				// Platforms that do not rename over an existing file
+				file.delete();
+				if (!temp.renameTo(file)) {
+					throw new IOException("unable to rename " + temp);
+				}
+			}
+			LOG.debug("Saved snapshot {}",file);
+		} catch (IOException e) {
+			LOG.warn("Unable to save snapshot to {}: {}",file,e.getMessage());
+		}
+	}
+
+	private File getFile(String key) {
+		return new File(directory,key.replaceAll("[^A-Za-z0-9._-]","_") + ".json");
+	}
+}
@@ -15,26 +15,51 @@
 package com.boundary.metrics.vmware.poller;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import com.boundary.metrics.vmware.client.metrics.Metric;
+import com.google.common.collect.ImmutableList;
 import com.vmware.vim25.PerfCounterInfo;
 import com.vmware.vim25.PerfMetricId;
 
 /**
- * Manages all of the metadata required to collect metrics from vSphere
+ * Manages all of the metadata required to collect metrics from vSphere.
+ * 
+ * The {@link PerfMetricId}s of each managed object type are compiled once, when the metadata is built,
+ * into immutable lists that are shared by the queries of every managed object of the type. The collected
+ * performance counters are compiled into a {@link CounterDispatch} indexed by counter id, which the samples
+ * of the query responses are dispatched through.
  */
 public class VMWareMetadata {
 	
     private final PerformanceCounterMetadata metadata;
 	private final Map<String, Map<String, MetricDefinition>> metrics;
 	private Map<String,MetricDefinition> counterToNameMap;
+	private final Map<String,InstanceFilter> instanceFilters;
+	private final Map<String,List<PerfMetricId>> perfMetrics;
+	private final CounterDispatch[] dispatch;
+	private final Map<Integer,CounterDispatch> sparseDispatch;
     
     public VMWareMetadata(PerformanceCounterMetadata metadata,Map<String, Map<String, MetricDefinition>> metrics) {
+    	this(metadata,metrics,Collections.<String,InstanceFilter>emptyMap());
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param metadata {@link PerformanceCounterMetadata} of the end point
+     * @param metrics {@link Map} of managed object type to the metrics collected for the type
+     * @param instanceFilters {@link Map} of managed object type to the {@link InstanceFilter} of the type,
+     * types without a filter only collect the aggregate series
+     */
+    public VMWareMetadata(PerformanceCounterMetadata metadata,Map<String, Map<String, MetricDefinition>> metrics,
+    		Map<String,InstanceFilter> instanceFilters) {
     	this.metadata = metadata;
     	this.metrics = metrics;
+    	this.instanceFilters = instanceFilters;
     	this.counterToNameMap = new HashMap<String,MetricDefinition>();
     	
     	// Build a map of performance counter names to metric identifiers
@@ -45,6 +70,36 @@ public class VMWareMetadata {
     			}
     		}
     	}
+
+    	// Performance metric ids only depend on the type, build them once for all of its managed objects
+    	this.perfMetrics = new HashMap<String,List<PerfMetricId>>();
+    	for (String morType : metrics.keySet()) {
+    		perfMetrics.put(morType,ImmutableList.copyOf(
+    				metadata.getPerformanceMetricIds(getMetrics(morType),getInstanceFilter(morType).getQueryInstance())));
+    	}
+
+    	// Resolve the metric and the unit scaling of each collected counter by its id
+    	PerformanceCounterRegistry registry = metadata.getRegistry();
+    	Map<Integer,CounterDispatch> compiled = new HashMap<Integer,CounterDispatch>();
+    	int maxId = -1;
+    	for (Map.Entry<String,MetricDefinition> counter : counterToNameMap.entrySet()) {
+    		Integer counterId = registry.getId(counter.getKey());
+    		if (counterId != null) {
+    			compiled.put(counterId,new CounterDispatch(registry.getInfo(counterId),counter.getValue().getMetric()));
+    			if (counterId <= PerformanceCounterRegistry.MAX_DENSE_ID) {
+    				maxId = Math.max(maxId,counterId);
+    			}
+    		}
+    	}
+    	this.dispatch = new CounterDispatch[maxId + 1];
+    	this.sparseDispatch = new HashMap<Integer,CounterDispatch>();
+    	for (Map.Entry<Integer,CounterDispatch> counter : compiled.entrySet()) {
+    		if (counter.getKey() >= 0 && counter.getKey() < dispatch.length) {
+    			dispatch[counter.getKey()] = counter.getValue();
+    		} else {
+    			sparseDispatch.put(counter.getKey(),counter.getValue());
+    		}
+    	}
     }
     
 	public Map<String,Integer> getNameMap() {
@@ -54,15 +109,57 @@ public class VMWareMetadata {
 	public Map<Integer,PerfCounterInfo> getInfoMap() {
 		return metadata.getInfoMap();
 	}
+
+	/**
+	 * Returns the performance counter with an id
+	 * 
+	 * @param counterId Counter id
+	 * @return {@link PerfCounterInfo}, null if the end point has no such counter
+	 */
+	public PerfCounterInfo getCounterInfo(int counterId) {
+		return metadata.getRegistry().getInfo(counterId);
+	}
 	
 	public Map<String, MetricDefinition> getMetrics(String type) {
 		return metrics.get(type);
 	}
 
+	/**
+	 * Returns the performance metrics queried for the managed objects of a type, the list and its
+	 * {@link PerfMetricId}s are shared and must not be modified
+	 * 
+	 * @param type Managed object type
+	 * @return {@link List} of {@link PerfMetricId}, empty if the type is not collected
+	 */
 	public List<PerfMetricId> getPerfMetrics(String type) {
-		return metadata.getPerformanceMetricIds(getMetrics(type));
+		List<PerfMetricId> ids = perfMetrics.get(type);
+		return ids != null ? ids : ImmutableList.<PerfMetricId>of();
+	}
+
+	/**
+	 * Returns the filter selecting the performance counter instances collected for a managed object type
+	 * 
+	 * @param type Managed object type
+	 * @return {@link InstanceFilter}
+	 */
+	public InstanceFilter getInstanceFilter(String type) {
+		InstanceFilter filter = instanceFilters.get(type);
+		return filter != null ? filter : InstanceFilter.AGGREGATE;
 	}
 	
+	/**
+	 * Returns the dispatch of the samples of a collected performance counter
+	 * 
+	 * @param counterId Counter id
+	 * @return {@link CounterDispatch}, null if the counter is not collected
+	 */
+	public CounterDispatch getDispatch(int counterId) {
+		if (counterId >= 0 && counterId < dispatch.length) {
+			return dispatch[counterId];
+		}
+		return sparseDispatch.isEmpty() ? null : sparseDispatch.get(counterId);
+	}
+
 	public String getMetricName(String metricFullName) {
 		return counterToNameMap.get(metricFullName).getMetric();
 	}
@@ -17,10 +17,24 @@ package com.boundary.metrics.vmware.poller;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.xml.ws.WebServiceException;
 import javax.xml.ws.soap.SOAPFaultException;
 
 import org.joda.time.DateTime;
@@ -29,13 +43,19 @@ import org.slf4j.LoggerFactory;
 
 import com.boundary.metrics.vmware.client.metrics.Measurement;
 import com.boundary.metrics.vmware.client.metrics.MetricClient;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.MetricSet;
 import com.codahale.metrics.Timer;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.vmware.connection.helpers.RetrievePageHandler;
 import com.vmware.vim25.InvalidPropertyFaultMsg;
+import com.vmware.vim25.ManagedObjectNotFound;
 import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.RuntimeFault;
 import com.vmware.vim25.RuntimeFaultFaultMsg;
 
 /**
@@ -46,32 +66,153 @@ import com.vmware.vim25.RuntimeFaultFaultMsg;
 public class VMWareMetricCollector implements Runnable, MetricSet {
 	
     private static final Logger LOG = LoggerFactory.getLogger(VMWareMetricCollector.class);
+
+    /**
+     * Shortest time between two snapshots of the end point
+     */
+    private static final long SNAPSHOT_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
         
     private DateTime lastPoll = null;
     private DateTime now = null;
     
+    // Latest sample time collected by the live windows of each managed object type
+    private final Map<String,DateTime> typeWatermarks = new HashMap<String,DateTime>();
+
+    // Missed windows still to be collected, null when there is nothing to backfill
+    private volatile DateTime backfillStart = null;
+    private volatile DateTime backfillEnd = null;
+    // Managed objects of the last completed live window and the job they were collected for, queried by backfill windows
+    private Map<MORCatalogEntry,InventoryIndex> liveInventory;
+    private MetricCollectionJob liveJob;
+    private WatermarkStore watermarkStore;
+    private InventoryTracker inventoryTracker;
+    // Last inventory walk, whose entries are reused by the next walk
+    private InventoryIndex walkedInventory;
+    // Containers at each set of inventory paths that is walked
+    private final Map<List<String>,List<ManagedObjectReference>> containers = new HashMap<List<String>,List<ManagedObjectReference>>();
+    
     private final AtomicBoolean lock = new AtomicBoolean(false);
     
     private final Timer pollTimer = new Timer();
     private final Meter overrunMeter = new Meter();
+    private final Timer queueWaitTimer = new Timer();
+    private final Timer queryTimer = new Timer();
+    private final Meter backfillMeter = new Meter();
+    private final Meter skippedMeter = new Meter();
+    private final AdaptiveBatchSizer batchSizer;
+    private final InventoryMetrics inventoryMetrics;
 
-    private MetricCollectionJob job;
+    // Replaced by the background reconciliation of a snapshot, read once at the start of each window
+    private volatile MetricCollectionJob job;
+
+    private SnapshotStore snapshotStore;
+    private ExecutorService reconcileExecutor;
+    private HostSessionPool hostSessions;
+    // Names of the hosts of the end point by managed object reference value, learnt from the inventory
+    private final Map<String,String> hostNames = new ConcurrentHashMap<String,String>();
+    // Inventory of the snapshot loaded at startup, collected in the first window instead of walking the inventory
+    private InventoryIndex snapshotInventory;
+    // Performance counters and inventory of the last window, saved to the snapshot store
+    private volatile PerformanceCounterMetadata counterMetadata;
+    private volatile InventoryIndex lastInventory;
+    private long snapshotSaved = 0;
+    // Modification time of the catalog file of the job and time the metadata was last checked for changes
+    private volatile long catalogModified;
+    private volatile long metadataChecked;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private CounterMetadataCache counterCache = new CounterMetadataCache();
+    // Key of the shared performance counters held by the collector
+    private String counterKey;
     
 
 	private VMwareClient vmwClient;
 	private MetricClient metricClient;
 	private MonitoredEntity configuration;
+	private ExecutorService queryExecutor;
+	private CollectionLane lane;
     
-    public VMWareMetricCollector(VMwareClient vmwClient,MetricClient metricClient,MonitoredEntity configuration) {
+	/**
+	 * Constructor
+	 * 
+	 * @param vmwClient {@link VMwareClient} Handles connection to vSphere end point
+	 * @param metricClient {@link MetricClient} Handles metrics API connection to Boundary
+	 * @param configuration {@link MonitoredEntity} configuration of the end point
+	 * @param queryExecutor {@link ExecutorService} worker pool used to run the queries of the end point concurrently.
+	 * Its number of threads limits the number of queries in flight.
+	 * @param lane {@link CollectionLane} whose managed object types are collected
+	 */
+    public VMWareMetricCollector(VMwareClient vmwClient,MetricClient metricClient,MonitoredEntity configuration,
+    		ExecutorService queryExecutor,CollectionLane lane) {
     	
     	this.job = null;
     	this.vmwClient = vmwClient;
     	this.metricClient = metricClient;
     	this.configuration = configuration;
+    	this.queryExecutor = queryExecutor;
+    	this.lane = lane;
+    	this.batchSizer = AdaptiveBatchSizer.of(configuration);
+    	this.inventoryMetrics = new InventoryMetrics(getClass(),vmwClient.getHost(),
+    			lane == CollectionLane.realtime ? null : lane.name());
+    }
+
+    /**
+     * Sets the store the watermark of the collector is persisted to
+     * 
+     * @param watermarkStore {@link WatermarkStore}, null to only keep the watermark in memory
+     */
+    public void setWatermarkStore(WatermarkStore watermarkStore) {
+    	this.watermarkStore = watermarkStore;
+    }
+
+    /**
+     * Sets the tracker the managed objects of the catalog types are read from
+     * 
+     * @param inventoryTracker {@link InventoryTracker}, null to walk the inventory every poll
+     */
+    public void setInventoryTracker(InventoryTracker inventoryTracker) {
+    	this.inventoryTracker = inventoryTracker;
+    }
+
+    /**
+     * Sets the store the performance counters and inventory of the end point are snapshot to
+     * 
+     * @param snapshotStore {@link SnapshotStore}, null to fetch them from the end point on startup
+     * @param reconcileExecutor {@link ExecutorService} the snapshot is reconciled on after a restart, apart
+     * from the worker pool so that the queries of the first windows do not wait for it
+     */
+    public void setSnapshotStore(SnapshotStore snapshotStore,ExecutorService reconcileExecutor) {
+    	this.snapshotStore = snapshotStore;
+    	this.reconcileExecutor = reconcileExecutor;
+    }
+
+    /**
+     * Sets the sessions to the ESXi hosts the realtime statistics of virtual machines are queried from
+     * 
+     * @param hostSessions {@link HostSessionPool}, null to query every managed object through the end point
+     */
+    public void setHostSessions(HostSessionPool hostSessions) {
+    	this.hostSessions = hostSessions;
+    }
+
+    /**
+     * Sets the cache the performance counters are shared through with the end points of the same build,
+     * by default the collector holds them in a cache of its own
+     * 
+     * @param counterCache {@link CounterMetadataCache}
+     */
+    public void setCounterMetadataCache(CounterMetadataCache counterCache) {
+    	this.counterCache = counterCache;
     }
 	
     /**
-     * Extracts performance metrics from Managed Objects on the monitored entity
+     * Extracts performance metrics from Managed Objects on the monitored entity.
+     * 
+     * The live window of the lane is collected first. When collection has fallen behind the end
+     * point, after a restart or an outage, the live window jumps to the current time and the missed
+     * windows, up to the configured maximum age, are backfilled in bounded chunks after each live
+     * poll so that backfill never holds up live collection: chunks query the managed objects of the
+     * live window and are only started while the poll has not used its period. The start of the
+     * oldest window that has not been collected is persisted to the {@link WatermarkStore} after each step.
      * 
      * @throws MalformedURLException Bad URL
      * @throws RemoteException Endpoint exception
@@ -83,64 +224,820 @@ public class VMWareMetricCollector implements Runnable, MetricSet {
 			throws MalformedURLException, RemoteException,
 			InvalidPropertyFaultMsg, RuntimeFaultFaultMsg, SOAPFaultException {
 
-		// Initialize our polling interval
+		long pollStarted = System.nanoTime();
+		DateTime endPointTime = vmwClient.getTimeAtEndPoint().minusSeconds(lane.getDelay());
+
+		// Initialize our polling interval, resuming from the persisted watermark if there is one
 		if (lastPoll == null) {
-			now = vmwClient.getTimeAtEndPoint();
-			lastPoll = now.minusSeconds(20);
+			now = endPointTime;
+			lastPoll = now.minusSeconds(lane.getPeriod());
+			DateTime watermark = watermarkStore != null ? watermarkStore.get(getWatermarkKey()) : null;
+			if (watermark != null) {
+				scheduleBackfill(watermark,lastPoll,endPointTime);
+			}
+		} else if (endPointTime.minusSeconds(lane.getPeriod()).isAfter(now)) {
+			// More than a poll behind the end point, resume live collection and backfill the missed windows
+			DateTime resume = endPointTime.minusSeconds(lane.getPeriod());
+			scheduleBackfill(lastPoll,resume,endPointTime);
+			typeWatermarks.clear();
+			lastPoll = resume;
+			now = endPointTime;
 		}
-		
-		LOG.info("Collecting metrics from: {}, to: {}",lastPoll,now);
+
+		collectWindow(lastPoll,now,true);
+
+		// Increment interval
+		lastPoll = now;
+		now = now.plusSeconds(lane.getPeriod());
+		saveWatermark();
+
+		backfill(endPointTime,pollStarted);
+	}
+
+	/**
+	 * Adds a range of missed windows to the pending backfill
+	 */
+	void scheduleBackfill(DateTime from,DateTime to,DateTime endPointTime) {
+		if (configuration.getBackfillChunksPerPoll() == 0) {
+			LOG.warn("{}: Backfill disabled, {} metrics from {} to {} are not collected",vmwClient.getName(),lane,from,to);
+			return;
+		}
+		DateTime oldest = endPointTime.minus(configuration.getMaxBackfill().toMilliseconds());
+		if (from.isBefore(oldest)) {
+			LOG.warn("{}: {} metrics from {} to {} are older than the maximum backfill, not collected",
+					vmwClient.getName(),lane,from,oldest);
+			from = oldest;
+		}
+		if (!from.isBefore(to)) {
+			return;
+		}
+		// Overlapping ranges are merged, a window may then be collected twice but none is lost
+		backfillStart = backfillStart == null || from.isBefore(backfillStart) ? from : backfillStart;
+		backfillEnd = backfillEnd == null || to.isAfter(backfillEnd) ? to : backfillEnd;
+		LOG.info("{}: Backfilling {} metrics from {} to {}",vmwClient.getName(),lane,backfillStart,backfillEnd);
+	}
+
+	/**
+	 * Collects the next chunks of the pending backfill, limited to the configured number of chunks per poll
+	 * and to the period of the lane, a chunk is not started once the poll has run for a whole period
+	 * 
+	 * @param endPointTime Current time at the end point
+	 * @param pollStarted {@link System#nanoTime()} at the start of the poll
+	 */
+	void backfill(DateTime endPointTime,long pollStarted) throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+		long budget = TimeUnit.SECONDS.toNanos(lane.getPeriod());
+		for (int i = 0; i < configuration.getBackfillChunksPerPoll() && backfillStart != null; i++) {
+			if (System.nanoTime() - pollStarted >= budget) {
+				LOG.debug("{}: Poll of {} metrics used its period, backfill resumes next poll",vmwClient.getName(),lane);
+				break;
+			}
+			// Statistics older than the maximum backfill may have been purged by the end point while backfilling
+			DateTime oldest = endPointTime.minus(configuration.getMaxBackfill().toMilliseconds());
+			DateTime chunkStart = backfillStart.isBefore(oldest) ? oldest : backfillStart;
+			DateTime chunkEnd = chunkStart.plus(configuration.getBackfillChunk().toMilliseconds());
+			if (!chunkEnd.isBefore(backfillEnd)) {
+				chunkEnd = backfillEnd;
+			}
+
+			if (chunkStart.isBefore(chunkEnd)) {
+				LOG.info("{}: Backfilling {} metrics from {} to {}",vmwClient.getName(),lane,chunkStart,chunkEnd);
+				collectBackfillWindow(chunkStart,chunkEnd);
+				backfillMeter.mark();
+			}
+
+			if (chunkEnd.isBefore(backfillEnd)) {
+				backfillStart = chunkEnd;
+			} else {
+				LOG.info("{}: Backfill of {} metrics completed",vmwClient.getName(),lane);
+				backfillStart = null;
+				backfillEnd = null;
+			}
+			saveWatermark();
+		}
+	}
+
+	/**
+	 * Persists the start of the oldest window that has not been collected
+	 */
+	private void saveWatermark() {
+		if (watermarkStore != null) {
+			watermarkStore.put(getWatermarkKey(),backfillStart != null ? backfillStart : lastPoll);
+		}
+	}
+
+	private String getWatermarkKey() {
+		return vmwClient.getName() + "." + lane;
+	}
+
+	/**
+	 * Returns the start of the pending backfill
+	 * 
+	 * @return {@link DateTime}, null when there is nothing to backfill
+	 */
+	DateTime getBackfillStart() {
+		return backfillStart;
+	}
+
+	/**
+	 * Returns the end of the pending backfill
+	 * 
+	 * @return {@link DateTime}, null when there is nothing to backfill
+	 */
+	DateTime getBackfillEnd() {
+		return backfillEnd;
+	}
+
+	/**
+	 * Collects a backfill window of the managed objects of the last live window, the inventory
+	 * is only walked when no live window has completed with the current job
+	 * 
+	 * @param start Start of the window
+	 * @param end End of the window
+	 * @throws InvalidPropertyFaultMsg Bad Property
+	 * @throws RuntimeFaultFaultMsg Runtime error
+	 */
+	void collectBackfillWindow(DateTime start,DateTime end) throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
+		final MetricCollectionJob job = this.job;
+		final Map<MORCatalogEntry,InventoryIndex> inventory = liveInventory;
+		if (inventory == null || liveJob != job) {
+			collectWindow(start,end,false);
+			return;
+		}
+
+		LOG.info("Collecting {} metrics from: {}, to: {}",lane,start,end);
+		final WindowQueries window = new WindowQueries(job,start,end,false);
+		boolean completed = false;
+		try {
+			for (Map.Entry<MORCatalogEntry,InventoryIndex> entry : inventory.entrySet()) {
+				window.submit(entry.getKey(),entry.getValue());
+			}
+			for (Future<DateTime> query : window.queries) {
+				waitFor(query);
+			}
+			completed = true;
+		} finally {
+			if (!completed) {
+				for (Future<?> future : window.queries) {
+					future.cancel(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects the metrics of a window of the lane.
+	 * 
+	 * The managed objects of each catalog entry are read from the {@link InventoryTracker} or retrieved
+	 * with a paged inventory walk of the containers at their inventory paths, one per set of paths, and queried in batches on the worker pool of the end point, all of which share the session of
+	 * the {@link VMwareClient}. The window is only collected once every query has completed.
+	 * Virtual machines and hosts that are not powered on and connected are skipped and counted.
+	 * 
+	 * Only the managed object types of the lane of the collector are queried. A catalog entry either chooses
+	 * its lane or is assigned one from its performance provider summary: types with real-time statistics
+	 * are collected in the realtime lane at their refresh rate, the others in the historical lane at the
+	 * shortest historical interval. In the live window each type keeps its own watermark and is only
+	 * queried once a full interval has elapsed, backfill windows are queried as a whole.
+	 * 
+	 * @param start Start of the window
+	 * @param end End of the window
+	 * @param live true for the live window, false for a backfill window
+	 * @throws InvalidPropertyFaultMsg Bad Property
+	 * @throws RuntimeFaultFaultMsg Runtime error
+	 */
+	private void collectWindow(final DateTime start,final DateTime end,boolean live)
+			throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
+
+		LOG.info("Collecting {} metrics from: {}, to: {}",lane,start,end);
 
 		// Our catalog consists of managed object types along with their
 		// associated performance counters and boundary metric identifiers
+		final MetricCollectionJob job = this.job;
 		MORCatalog catalog = job.getManagedObjectCatalog();
+		final WindowQueries window = new WindowQueries(job,start,end,live);
 
-		for (MORCatalogEntry entry : catalog.getCatalog()) {
+		boolean completed = false;
+		try {
+			// The managed objects of the lane are read from the inventory tracker, the types it does not
+			// provide yet are retrieved in a single inventory walk
+			Map<MORCatalogEntry,InventoryIndex> inventory = new LinkedHashMap<MORCatalogEntry,InventoryIndex>();
+			InventoryIndex tracked = inventoryTracker != null ? inventoryTracker.getInventory() : null;
+			if (tracked != null) {
+				learnHosts(tracked);
+			}
+			final Set<String> untracked = new LinkedHashSet<String>();
+			final List<MORCatalogEntry> untrackedEntries = new ArrayList<MORCatalogEntry>();
+			for (MORCatalogEntry entry : catalog.getCatalog()) {
+				if (entry.getLane() != null && entry.getLane() != lane) {
+					continue;
+				}
+				if (tracked != null && tracked.contains(entry.getType())) {
+					inventory.put(entry,tracked);
+					window.submit(entry,tracked);
+				} else {
+					untracked.add(entry.getType());
+					untrackedEntries.add(entry);
+				}
+			}
+			// Hosts are retrieved along with the virtual machines to open sessions to them
+			if (hostSessions != null && lane == CollectionLane.realtime && untracked.contains(InventoryIndex.VIRTUAL_MACHINE)) {
+				untracked.add(InventoryIndex.HOST_SYSTEM);
+			}
+			if (snapshotInventory != null && !snapshotInventory.getTypes().containsAll(untracked)) {
+				LOG.info("Snapshot does not cover the types: {}, ignoring it",untracked);
+				snapshotInventory = null;
+			}
+			if (!untracked.isEmpty() && snapshotInventory != null) {
+				// The first window after a restart collects the managed objects of the snapshot, the inventory
+				// is walked again by the next window. Managed objects removed since the snapshot are dropped from their batch.
+				LOG.info("Using snapshot of {} managed objects of types: {}",snapshotInventory.size(),untracked);
+				walkedInventory = snapshotInventory;
+				snapshotInventory = null;
+				learnHosts(walkedInventory);
+				for (MORCatalogEntry entry : untrackedEntries) {
+					inventory.put(entry,walkedInventory);
+					window.submit(entry,walkedInventory);
+				}
+			} else if (!untracked.isEmpty()) {
+				// The managed objects of each set of inventory paths are walked under their containers,
+				// the queries of each page are started while the next page is retrieved
+				LOG.info("Fetching managed objects of types: {}",untracked);
+				final InventoryIndex previous = walkedInventory;
+				final InventoryIndex.Builder pages = new InventoryIndex.Builder(vmwClient.getName(),untracked,previous);
+				final Timer.Context discovery = inventoryMetrics.time();
+				for (Map.Entry<List<String>,List<MORCatalogEntry>> scope : getScopes(untrackedEntries,untracked).entrySet()) {
+					Set<String> types = new LinkedHashSet<String>();
+					for (MORCatalogEntry entry : scope.getValue()) {
+						types.add(entry.getType());
+					}
+					if (scope.getKey().equals(configuration.getHostInventoryPaths()) && untracked.contains(InventoryIndex.HOST_SYSTEM)) {
+						types.add(InventoryIndex.HOST_SYSTEM);
+					}
+					PageCollector collector = new PageCollector(window,scope.getValue(),pages);
+					boolean walked = false;
+					try {
+						for (ManagedObjectReference container : getContainers(scope.getKey())) {
+							vmwClient.getInventory(container,types,configuration.getInventoryPageSize(),collector);
+						}
+						walked = true;
+					} finally {
+						// A container may have been removed or moved, its path is resolved again by the next walk
+						if (!walked) {
+							forgetContainers(scope.getKey());
+						}
+					}
+				}
+				walkedInventory = pages.build();
+				discovery.stop();
+				inventoryMetrics.recordInventory(previous,walkedInventory);
+				LOG.debug("Fetched {} running managed objects in {} pages",walkedInventory.size(),pages.getPages());
+				for (MORCatalogEntry entry : untrackedEntries) {
+					inventory.put(entry,walkedInventory);
+				}
+			}
+
+			// Virtual machines and hosts that are powered off or disconnected have no statistics to query,
+			// when none is running a type without a lane cannot be assigned one so its skipped entities are not counted
+			for (Map.Entry<MORCatalogEntry,InventoryIndex> type : inventory.entrySet()) {
+				String typeName = type.getKey().getType();
+				int skipped = type.getValue().getSkipped(typeName);
+				if (skipped > 0 && (type.getKey().getLane() == lane || window.collected.contains(typeName))) {
+					LOG.debug("Skipped {} managed objects of type {} that are not running",skipped,typeName);
+					skippedMeter.mark(skipped);
+				}
+			}
+
+			// All of the queries have to complete before the interval is advanced
+			for (Future<DateTime> query : window.queries) {
+				waitFor(query);
+			}
+			advanceWatermarks(window.queried,window.sampled,end);
+			completed = true;
+			if (live) {
+				liveInventory = inventory;
+				liveJob = job;
+			}
+
+			lastInventory = untracked.isEmpty() ? tracked : walkedInventory;
+			if (live) {
+				forgetHosts(tracked != null && tracked.contains(InventoryIndex.HOST_SYSTEM) ? tracked : walkedInventory);
+			}
+			if (snapshotStore != null && System.currentTimeMillis() - snapshotSaved > SNAPSHOT_INTERVAL_MS) {
+				saveSnapshot();
+			}
+		} finally {
+			if (!completed) {
+				for (Future<?> future : window.queries) {
+					future.cancel(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Groups the catalog entries by the inventory paths their managed objects are discovered in,
+	 * those of the catalog entry or else those of the monitored entity
+	 * 
+	 * @param entries Catalog entries whose managed objects are walked
+	 * @param types Managed object types that are walked, hosts are retrieved in the host inventory paths of the monitored entity
+	 * @return {@link Map} of inventory paths to catalog entries
+	 */
+	Map<List<String>,List<MORCatalogEntry>> getScopes(List<MORCatalogEntry> entries,Set<String> types) {
+		Map<List<String>,List<MORCatalogEntry>> scopes = new LinkedHashMap<List<String>,List<MORCatalogEntry>>();
+		if (types.contains(InventoryIndex.HOST_SYSTEM)) {
+			scopes.put(configuration.getHostInventoryPaths(),new ArrayList<MORCatalogEntry>());
+		}
+		for (MORCatalogEntry entry : entries) {
+			List<String> paths = entry.getInventoryPaths() != null ? entry.getInventoryPaths()
+					: InventoryIndex.HOST_SYSTEM.equals(entry.getType()) ? configuration.getHostInventoryPaths()
+					: configuration.getInventoryPaths();
+			List<MORCatalogEntry> scope = scopes.get(paths);
+			if (scope == null) {
+				scope = new ArrayList<MORCatalogEntry>();
+				scopes.put(paths,scope);
+			}
+			scope.add(entry);
+		}
+		return scopes;
+	}
 
-			// Collects the managed objects of the given type
-			LOG.info("Fetching managed objects of type: {}",entry.getType());
-			Map<String, ManagedObjectReference> entities = vmwClient.getManagedObjects(entry.getType());
-
-			LOG.info("Collecting metrics for {} managed objects",entities.size());
-			for (Map.Entry<String, ManagedObjectReference> entity : entities.entrySet()) {
-				ManagedObjectReference mor = entity.getValue();
-				String entityName = entity.getKey();
-
-				// Prefix the managed object name with performance metric to get unique names
-				String source = vmwClient.getName() + "-" + entityName;
-				LOG.info("Collecting metrics for \"{}\"",source);
-				
-				List<Measurement> measurements = vmwClient.getMeasurements(mor,entityName,source,20,lastPoll,now,job.getMetadata());
-				LOG.debug("{} measurements for managed object {}",measurements.size(), entityName);
-
-				// Send metrics
-				if (!measurements.isEmpty()) {
-					metricClient.addMeasurements(measurements);
+	/**
+	 * Returns the containers at inventory paths. Paths are looked up once and again after a walk of their
+	 * containers fails, paths that do not resolve are logged and skipped until then.
+	 * 
+	 * @param paths Inventory paths, empty for the root folder
+	 * @return {@link List} of {@link ManagedObjectReference} of the containers
+	 * @throws RuntimeFaultFaultMsg Runtime error
+	 */
+	List<ManagedObjectReference> getContainers(List<String> paths) throws RuntimeFaultFaultMsg {
+		List<ManagedObjectReference> resolved = containers.get(paths);
+		if (resolved != null) {
+			return resolved;
+		}
+		resolved = new ArrayList<ManagedObjectReference>();
+		if (paths.isEmpty()) {
+			resolved.add(vmwClient.getServiceContent().getRootFolder());
+		}
+		for (String path : paths) {
+			ManagedObjectReference container = findByInventoryPath(path);
+			if (container != null) {
+				resolved.add(container);
+			} else {
+				LOG.warn("No container at inventory path: {}, skipping",path);
+			}
+		}
+		containers.put(paths,resolved);
+		return resolved;
+	}
+
+	/**
+	 * Forgets the containers of inventory paths, which are looked up again by the next walk
+	 * 
+	 * @param paths Inventory paths
+	 */
+	void forgetContainers(List<String> paths) {
+		containers.remove(paths);
+	}
+
+	ManagedObjectReference findByInventoryPath(String path) throws RuntimeFaultFaultMsg {
+		return vmwClient.findByInventoryPath(path);
+	}
+
+	/**
+	 * Indexes the pages of the inventory walk of a set of inventory paths and submits the queries of
+	 * the managed objects of their catalog entries
+	 */
+	private class PageCollector implements RetrievePageHandler {
+
+		private final WindowQueries window;
+		private final List<MORCatalogEntry> entries;
+		private final InventoryIndex.Builder pages;
+
+		PageCollector(WindowQueries window,List<MORCatalogEntry> entries,InventoryIndex.Builder pages) {
+			this.window = window;
+			this.entries = entries;
+			this.pages = pages;
+		}
+
+		@Override
+		public void handle(Map<ManagedObjectReference,Map<String,Object>> page)
+				throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+			inventoryMetrics.recordPage(page);
+			// The sources of the page are final, they account for the managed objects of the earlier pages
+			InventoryIndex index = pages.add(page);
+			learnHosts(index);
+			for (MORCatalogEntry entry : entries) {
+				window.submit(entry,index);
+			}
+		}
+	}
+
+	/**
+	 * Queries of the managed objects of a window, submitted as the inventory is read
+	 */
+	private class WindowQueries {
+
+		private final MetricCollectionJob job;
+		private final DateTime start;
+		private final DateTime end;
+		private final boolean live;
+		private final VMWareMetadata metadata;
+
+		private final List<Future<DateTime>> queries = new ArrayList<Future<DateTime>>();
+		// Query start of the types whose watermark advances once the queries complete
+		private final Map<String,DateTime> queried = new HashMap<String,DateTime>();
+		// Latest sample time returned for each type, updated by the queries as they complete
+		private final Map<String,DateTime> sampled = new HashMap<String,DateTime>();
+		// Types collected in the lane
+		private final Set<String> collected = new HashSet<String>();
+
+		WindowQueries(MetricCollectionJob job,DateTime start,DateTime end,boolean live) {
+			this.job = job;
+			this.start = start;
+			this.end = end;
+			this.live = live;
+			this.metadata = job.getMetadata();
+		}
+
+		/**
+		 * Submits the queries of the running managed objects of a catalog entry in an index,
+		 * either of the tracked inventory or of one page of an inventory walk
+		 */
+		void submit(MORCatalogEntry entry,InventoryIndex index) throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+			final String typeName = entry.getType();
+			Map<String, InventoryEntry> entities = index.getEntries(typeName);
+			if (entities.isEmpty()) {
+				return;
+			}
+			ManagedObjectReference sample = entities.values().iterator().next().getManagedObject();
+
+			// Types without a lane in the catalog are collected in the lane matching the statistics they provide
+			if (entry.getLane() == null
+					&& CollectionLane.of(job.getProviderSummaries().getSummary(sample)) != lane) {
+				return;
+			}
+			final Integer intervalId = job.getProviderSummaries().getIntervalId(sample,lane);
+			if (intervalId == null) {
+				LOG.warn("{} does not provide {} performance statistics, skipping",typeName,lane);
+				return;
+			}
+			collected.add(typeName);
+			final DateTime typeStart;
+			if (live) {
+				// A type whose statistics have not been rolled up yet is queried again from its watermark,
+				// back to at most the maximum backfill
+				DateTime watermark = typeWatermarks.get(typeName);
+				DateTime oldest = end.minus(configuration.getMaxBackfill().toMilliseconds());
+				if (watermark == null) {
+					typeStart = end.minusSeconds(intervalId);
 				} else {
-					LOG.warn("No measurements collected in last poll for managed object: {}",entityName);
+					typeStart = watermark.isBefore(oldest) ? oldest : watermark;
+				}
+				if (typeStart.plusSeconds(intervalId).isAfter(end)) {
+					LOG.debug("{} is collected every {}s, not due until {}",typeName,intervalId,typeStart.plusSeconds(intervalId));
+					return;
 				}
+				queried.put(typeName,typeStart);
+			} else {
+				typeStart = start;
+			}
+			LOG.info("Collecting {} metrics for {} managed objects of type {}",lane,entities.size(),typeName);
+
+			// Realtime statistics of virtual machines are queried from the host they run on when it is known
+			Collection<InventoryEntry> viaEndPoint = entities.values();
+			if (hostSessions != null && lane == CollectionLane.realtime && InventoryIndex.VIRTUAL_MACHINE.equals(typeName)) {
+				Map<String,List<InventoryEntry>> byHost = new HashMap<String,List<InventoryEntry>>();
+				viaEndPoint = new ArrayList<InventoryEntry>();
+				for (InventoryEntry entity : entities.values()) {
+					String hostName = entity.getHost() != null ? hostNames.get(entity.getHost()) : null;
+					if (hostName != null && hostSessions.get(hostName).isAvailable()) {
+						List<InventoryEntry> hostEntities = byHost.get(hostName);
+						if (hostEntities == null) {
+							hostEntities = new ArrayList<InventoryEntry>();
+							byHost.put(hostName,hostEntities);
+						}
+						hostEntities.add(entity);
+					} else {
+						viaEndPoint.add(entity);
+					}
+				}
+				for (Map.Entry<String,List<InventoryEntry>> host : byHost.entrySet()) {
+					HostSession session = hostSessions.get(host.getKey());
+					for (List<InventoryEntry> batch : Iterables.partition(host.getValue(),session.getBatchSizer().getBatchSize())) {
+						submitHostBatch(session,typeName,batch,intervalId,typeStart);
+					}
+				}
+			}
+
+			// Query the managed objects in batches to limit the number of round trips to the end point,
+			// the batch size adapts to how quickly the end point answers
+			for (List<InventoryEntry> batch : Iterables.partition(viaEndPoint,batchSizer.getBatchSize())) {
+				final Map<ManagedObjectReference,String> sources = getSources(batch);
+				queries.add(VMWareMetricCollector.this.submit(new Callable<DateTime>() {
+					@Override
+					public DateTime call() throws Exception {
+						return sampled(typeName,collectMeasurements(vmwClient,sources,intervalId,typeStart,end,metadata,batchSizer));
+					}
+				}));
 			}
 		}
-		// Increment interval
-		lastPoll = now;
-		now = now.plusSeconds(20);
+
+		/**
+		 * Submits the query of a batch of virtual machines to their host, falling back to the end point
+		 * when the session of the host fails
+		 */
+		private void submitHostBatch(final HostSession session,final String typeName,final List<InventoryEntry> batch,
+				final Integer intervalId,final DateTime typeStart) {
+			queries.add(VMWareMetricCollector.this.submit(new Callable<DateTime>() {
+				@Override
+				public DateTime call() throws Exception {
+					// Virtual machines the host does not report, such as during a vMotion, are queried through vCenter
+					List<InventoryEntry> unresolved = new ArrayList<InventoryEntry>();
+					DateTime collected = null;
+					try {
+						VMWareMetadata hostMetadata = session.getMetadata(job.getManagedObjectCatalog());
+						Map<ManagedObjectReference,String> sources = session.resolve(batch,unresolved);
+						if (!sources.isEmpty()) {
+							collected = collectMeasurements(session.getClient(),sources,intervalId,typeStart,end,
+									hostMetadata,session.getBatchSizer());
+						}
+					} catch (RuntimeFaultFaultMsg e) {
+						session.fail(e);
+						unresolved = batch;
+					} catch (InvalidPropertyFaultMsg e) {
+						session.fail(e);
+						unresolved = batch;
+					} catch (RuntimeException e) {
+						session.fail(e);
+						unresolved = batch;
+					}
+					if (!unresolved.isEmpty()) {
+						collected = latest(collected,
+								collectMeasurements(vmwClient,getSources(unresolved),intervalId,typeStart,end,metadata,batchSizer));
+					}
+					return sampled(typeName,collected);
+				}
+			}));
+		}
+
+		/**
+		 * Records the latest sample time returned by a query of a type
+		 */
+		private synchronized DateTime sampled(String typeName,DateTime sampleTime) {
+			if (sampleTime != null) {
+				sampled.put(typeName,latest(sampled.get(typeName),sampleTime));
+			}
+			return sampleTime;
+		}
+	}
+
+	/**
+	 * Advances the watermark of each type queried by a live window to the latest sample time returned
+	 * for the type, so that statistics of historical intervals that are rolled up after the latest sample
+	 * are queried again by the next window. The queries of a type that succeeded without returning any
+	 * sample advance its watermark to the end of the window, the type is not queried over the same
+	 * window again.
+	 * 
+	 * @param queried {@link Map} of type to the start of its query
+	 * @param sampled {@link Map} of type to the latest sample time returned
+	 * @param end End of the window
+	 */
+	void advanceWatermarks(Map<String,DateTime> queried,Map<String,DateTime> sampled,DateTime end) {
+		for (Map.Entry<String,DateTime> type : queried.entrySet()) {
+			DateTime sampleTime = sampled.get(type.getKey());
+			typeWatermarks.put(type.getKey(),sampleTime != null ? latest(type.getValue(),sampleTime) : end);
+		}
+	}
+
+	/**
+	 * Returns the time a type is queried from by the next live window
+	 * 
+	 * @param type Managed object type
+	 * @return {@link DateTime}, null before the type is first queried
+	 */
+	DateTime getTypeWatermark(String type) {
+		return typeWatermarks.get(type);
+	}
+
+	private static DateTime latest(DateTime a,DateTime b) {
+		if (a == null) {
+			return b;
+		}
+		return b == null || a.isAfter(b) ? a : b;
+	}
+
+	private static Map<ManagedObjectReference,String> getSources(List<InventoryEntry> batch) {
+		Map<ManagedObjectReference,String> sources = new LinkedHashMap<ManagedObjectReference,String>();
+		for (InventoryEntry entity : batch) {
+			sources.put(entity.getManagedObject(),entity.getSource());
+		}
+		return sources;
+	}
+
+	/**
+	 * Records the names of the hosts of an index, which are the addresses host sessions are opened to
+	 */
+	private void learnHosts(InventoryIndex index) {
+		if (hostSessions != null) {
+			for (InventoryEntry host : index.getEntries(InventoryIndex.HOST_SYSTEM).values()) {
+				hostNames.put(host.getManagedObject().getValue(),host.getName());
+			}
+		}
+	}
+
+	/**
+	 * Forgets the hosts that are no longer in an index and closes their sessions, hosts that
+	 * are not connected are kept until they are removed from the inventory
+	 */
+	void forgetHosts(InventoryIndex index) {
+		if (hostSessions == null || index == null || !index.contains(InventoryIndex.HOST_SYSTEM)) {
+			return;
+		}
+		Set<String> current = new HashSet<String>(index.getEntries(InventoryIndex.HOST_SYSTEM).keySet());
+		current.addAll(index.getSkippedObjects(InventoryIndex.HOST_SYSTEM));
+		hostNames.keySet().retainAll(current);
+		hostSessions.retain(new HashSet<String>(hostNames.values()));
+	}
+
+
+	/**
+	 * Queries the performance counters of a batch of managed objects and sends the
+	 * resulting measurements. The latency and size of the response, or the fault
+	 * raised by the query, adjust the size of subsequent batches of the client.
+	 * A managed object that no longer exists, such as one of a snapshot that was deleted
+	 * since, is dropped and the rest of the batch queried again without adjusting the batch size.
+	 * 
+	 * @param client {@link VMwareClient} of the end point or of the host the managed objects are queried from
+	 * @param sources {@link Map} of {@link ManagedObjectReference} to source name
+	 * @param intervalId Sampling interval in seconds
+	 * @param start Start of the collection window
+	 * @param end End of the collection window
+	 * @param metadata {@link VMWareMetadata}
+	 * @param batchSizer {@link AdaptiveBatchSizer} of the client, the end point and each host adapt separately
+	 * @return Time of the latest sample collected, null when no sample was returned
+	 * @throws RuntimeFaultFaultMsg Runtime error
+	 */
+	private DateTime collectMeasurements(VMwareClient client,Map<ManagedObjectReference,String> sources,Integer intervalId,
+			DateTime start, DateTime end, VMWareMetadata metadata,AdaptiveBatchSizer batchSizer) throws RuntimeFaultFaultMsg {
+		LOG.info("Collecting metrics for a batch of {} managed objects",sources.size());
+
+		List<Measurement> measurements = null;
+		while (measurements == null) {
+			try {
+				measurements = client.getMeasurements(sources,intervalId,start,end,metadata);
+			} catch (RuntimeFaultFaultMsg e) {
+				Map<ManagedObjectReference,String> remaining = withoutMissingObject(sources,e.getFaultInfo());
+				if (remaining == null) {
+					batchSizer.onFault(sources.size());
+					throw e;
+				}
+				if (remaining.isEmpty()) {
+					return null;
+				}
+				sources = remaining;
+			} catch (WebServiceException e) {
+				// SOAP faults as well as transport errors and timeouts
+				batchSizer.onFault(sources.size());
+				throw e;
+			} finally {
+				// Only the queryPerf call is timed, availability queries made to build the specs are not,
+				// and a batch whose specs were all pruned did not query at all
+				long elapsed = client.getLastQueryTime();
+				if (elapsed >= 0) {
+					queryTimer.update(elapsed,TimeUnit.NANOSECONDS);
+					if (measurements != null) {
+						batchSizer.onSuccess(sources.size(),elapsed,client.getLastResponseSize());
+					}
+				}
+			}
+		}
+		LOG.debug("{} measurements for batch of {} managed objects",measurements.size(),sources.size());
+
+		// Send metrics
+		DateTime sampleTime = null;
+		if (!measurements.isEmpty()) {
+			metricClient.addMeasurements(measurements);
+			for (Measurement measurement : measurements) {
+				sampleTime = latest(sampleTime,measurement.getTimestamp());
+			}
+		} else {
+			LOG.warn("No measurements collected in last poll for managed objects: {}",sources.values());
+		}
+		return sampleTime;
+	}
+
+	/**
+	 * Removes the managed object that a fault reports as not found from a batch
+	 * 
+	 * @param sources {@link Map} of {@link ManagedObjectReference} to source name of the batch
+	 * @param fault {@link RuntimeFault} raised by the query of the batch
+	 * @return {@link Map} of the other managed objects of the batch, null if the fault is not
+	 * a {@link ManagedObjectNotFound} of a managed object of the batch
+	 */
+	static Map<ManagedObjectReference,String> withoutMissingObject(Map<ManagedObjectReference,String> sources,RuntimeFault fault) {
+		if (!(fault instanceof ManagedObjectNotFound) || ((ManagedObjectNotFound) fault).getObj() == null) {
+			return null;
+		}
+		// Managed object references do not implement equals
+		ManagedObjectReference missing = ((ManagedObjectNotFound) fault).getObj();
+		Map<ManagedObjectReference,String> remaining = new LinkedHashMap<ManagedObjectReference,String>();
+		for (Map.Entry<ManagedObjectReference,String> source : sources.entrySet()) {
+			ManagedObjectReference mor = source.getKey();
+			if (!mor.getValue().equals(missing.getValue()) || !mor.getType().equals(missing.getType())) {
+				remaining.put(mor,source.getValue());
+			}
+		}
+		if (remaining.size() == sources.size()) {
+			return null;
+		}
+		LOG.info("{} no longer exists, dropped from its batch",missing.getValue());
+		return remaining;
+	}
+
+	/**
+	 * Submits a task to the worker pool of the end point, recording how long
+	 * the task waits in the queue before it runs.
+	 */
+	private <T> Future<T> submit(final Callable<T> task) {
+		final long submitted = System.nanoTime();
+		return queryExecutor.submit(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				queueWaitTimer.update(System.nanoTime() - submitted,TimeUnit.NANOSECONDS);
+				return task.call();
+			}
+		});
 	}
 
+	/**
+	 * Waits for a task to complete, rethrowing the vSphere faults raised by the task
+	 */
+	private static <T> T waitFor(Future<T> future) throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw Throwables.propagate(e);
+		} catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(),RuntimeFaultFaultMsg.class);
+			Throwables.propagateIfInstanceOf(e.getCause(),InvalidPropertyFaultMsg.class);
+			throw Throwables.propagate(e.getCause());
+		}
+	}
 
 	@Override
 	public Map<String, com.codahale.metrics.Metric> getMetrics() {
-        return ImmutableMap.of(
-                MetricRegistry.name(getClass(), "poll-timer", vmwClient.getHost()), (com.codahale.metrics.Metric)pollTimer,
-                MetricRegistry.name(getClass(), "overrun-meter", vmwClient.getHost()), overrunMeter
-                );
+        return ImmutableMap.<String, com.codahale.metrics.Metric>builder()
+                .putAll(inventoryMetrics.getMetrics())
+                .put(metricName("poll-timer"), pollTimer)
+                .put(metricName("overrun-meter"), overrunMeter)
+                .put(metricName("queue-wait-timer"), queueWaitTimer)
+                .put(metricName("query-timer"), queryTimer)
+                .put(metricName("query-fault-meter"), batchSizer.getFaultMeter())
+                .put(metricName("query-batch-size"), new Gauge<Integer>() {
+                	@Override
+                	public Integer getValue() {
+                		return batchSizer.getBatchSize();
+                	}
+                })
+                .put(metricName("container-views"), new Gauge<Integer>() {
+                	@Override
+                	public Integer getValue() {
+                		return vmwClient.getViewCache().size();
+                	}
+                })
+                .put(metricName("backfill-meter"), backfillMeter)
+                .put(metricName("skipped-entities-meter"), skippedMeter)
+                .put(metricName("host-sessions"), new Gauge<Integer>() {
+                	@Override
+                	public Integer getValue() {
+                		return hostSessions != null ? hostSessions.size() : 0;
+                	}
+                })
+                .put(metricName("backfill-pending-seconds"), new Gauge<Long>() {
+                	@Override
+                	public Long getValue() {
+                		DateTime from = backfillStart;
+                		DateTime to = backfillEnd;
+                		return from == null || to == null ? 0 : (to.getMillis() - from.getMillis()) / 1000;
+                	}
+                })
+                .build();
+	}
+
+	/**
+	 * Returns the name of a metric of the collector, the metrics of the realtime
+	 * lane keep the names they had before lanes were introduced
+	 */
+	private String metricName(String name) {
+		return MetricRegistry.name(getClass(), name, vmwClient.getHost(),
+				lane == CollectionLane.realtime ? null : lane.name());
 	}
 
     /**
      * Test to see if we need to update our metrics to be collected.
      * 
-     * This currently just looks for a null job. If the configuration every becomes
-     * dynamic then the method will need to be updated to return false when the metdata configuration
-     * has changed.
+     * This only looks for a null job, changes of the performance counters or of the catalog once
+     * the job is loaded are picked up in the background by {@link #refreshMetadata()}.
      * 
      * @return {@link boolean} true, update metric map, false no update needed
      */
@@ -177,6 +1074,8 @@ public class VMWareMetricCollector implements Runnable, MetricSet {
                 // Collect the metrics
                 collectMetrics();
 
+                refreshMetadata();
+
             }
             catch (SOAPFaultException s) {
             	s.printStackTrace();
@@ -197,7 +1096,7 @@ public class VMWareMetricCollector implements Runnable, MetricSet {
                 timer.stop();
             }
         } else {
-            LOG.warn("Poll of {} already in progress, skipping",vmwClient.getName());
+            LOG.warn("{} poll of {} already in progress, skipping",lane,vmwClient.getName());
             overrunMeter.mark();
         }
 	}
@@ -208,11 +1107,13 @@ public class VMWareMetricCollector implements Runnable, MetricSet {
 	 * @throws RuntimeFaultFaultMsg vSphere runtime error {@link RuntimeFaultFaultMsg}
 	 * @throws InvalidPropertyFaultMsg Incorrect property error {@link InvalidPropertyFaultMsg}
 	 */
-	private void updateMetadata() throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
+	void updateMetadata() throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
 		
 		LOG.info("{}: Load catalog from {}",
 				vmwClient.getName(),configuration.getCatalog());
-		MORCatalog catalog = MORCatalogFactory.create(new File(configuration.getCatalog()));
+		File catalogFile = new File(configuration.getCatalog());
+		long modified = catalogFile.lastModified();
+		MORCatalog catalog = MORCatalogFactory.create(catalogFile);
 		LOG.info("{}: Catalog loaded with {} metric definitions and {} performance counters",
 				vmwClient.getName(),
 				catalog.getDefinitions().size(),
@@ -227,19 +1128,193 @@ public class VMWareMetricCollector implements Runnable, MetricSet {
 		LOG.info("{}: Completed creation or update of metric definitions",
 				vmwClient.getName());
 		
-		PerformanceCounterCollector collector = new PerformanceCounterCollector(vmwClient);
-		
-		LOG.info("{}: Fetching performance counters",vmwClient.getName());
-		PerformanceCounterMetadata perfCounterMetadata = collector.fetchPerformanceCounters();
-		LOG.info("{}: Fetched {} performance counters",vmwClient.getName(),
-				perfCounterMetadata.getInfoMap().size());
-		
+		// After a restart collection starts from the snapshot, which is reconciled with the end point in the background
+		PerformanceCounterMetadata perfCounterMetadata = null;
+		EndpointSnapshot snapshot = snapshotStore != null ? snapshotStore.load(getInstanceUuid()) : null;
+		if (snapshot != null) {
+			perfCounterMetadata = snapshot.getCounterMetadata();
+			snapshotInventory = snapshot.getInventory(lane,vmwClient.getName());
+			LOG.info("{}: Loaded {} performance counters from snapshot",vmwClient.getName(),
+					perfCounterMetadata.getInfoMap().size());
+		}
+		if (perfCounterMetadata == null || perfCounterMetadata.getInfoMap().isEmpty()) {
+			perfCounterMetadata = fetchPerformanceCounters();
+			snapshotInventory = null;
+		} else {
+			reconcile(catalog,perfCounterMetadata);
+		}
+		this.counterMetadata = perfCounterMetadata;
+		this.job = createJob(catalog,perfCounterMetadata);
+		this.catalogModified = modified;
+		this.metadataChecked = System.currentTimeMillis();
+	}
+
+	/**
+	 * Checks the performance counters of the end point and the catalog file for changes once every refresh
+	 * interval. The check runs on the worker pool, off the polling thread, and only one check runs at a time.
+	 * It holds the session of the client, a reconnection of the polling thread waits for it to complete.
+	 */
+	void refreshMetadata() {
+		long interval = configuration.getMetadataRefreshInterval().toMilliseconds();
+		if (interval <= 0 || job == null || System.currentTimeMillis() - metadataChecked < interval
+				|| !refreshing.compareAndSet(false,true)) {
+			return;
+		}
+		metadataChecked = System.currentTimeMillis();
+		submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				vmwClient.getSessionLock().readLock().lock();
+				try {
+					checkMetadata();
+				} catch (Exception e) {
+					LOG.warn("{}: Unable to check the metadata for changes, keeping the current job",vmwClient.getName(),e);
+				} finally {
+					vmwClient.getSessionLock().readLock().unlock();
+					refreshing.set(false);
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Builds a new job when the performance counters of the end point or the catalog file changed. Shared
+	 * performance counters are only fetched again when the build of the end point changes. The job is replaced
+	 * in a single write, windows in progress complete with the job they started with. A catalog that cannot
+	 * be loaded keeps the current job.
+	 * 
+	 * @throws InvalidPropertyFaultMsg Bad Property
+	 * @throws RuntimeFaultFaultMsg Runtime error
+	 */
+	void checkMetadata() throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
+		MORCatalog catalog = job.getManagedObjectCatalog();
+		File catalogFile = new File(configuration.getCatalog());
+		long modified = catalogFile.lastModified();
+		boolean catalogChanged = modified != catalogModified;
+		if (catalogChanged) {
+			catalog = MORCatalogFactory.create(catalogFile);
+			if (catalog == null) {
+				LOG.warn("{}: Unable to load the changed catalog {}, keeping the current one",
+						vmwClient.getName(),configuration.getCatalog());
+				return;
+			}
+		}
+		PerformanceCounterMetadata current = counterMetadata;
+		PerformanceCounterMetadata fetched = fetchPerformanceCounters();
+		boolean countersChanged = !fetched.getNameMap().equals(current.getNameMap());
+		if (catalogChanged || countersChanged) {
+			LOG.info("{}: Metadata changed, catalog: {}, performance counters: {}, replacing the job",
+					vmwClient.getName(),catalogChanged,countersChanged);
+			counterMetadata = countersChanged ? fetched : current;
+			job = createJob(catalog,counterMetadata);
+			catalogModified = modified;
+			if (catalogChanged) {
+				warnUntracked(catalog);
+			}
+			if (countersChanged && snapshotStore != null) {
+				saveSnapshot();
+			}
+		}
+	}
+
+	/**
+	 * Warns about the types of a reloaded catalog that the {@link InventoryTracker} does not track,
+	 * the tracker is started with the types of the catalog so their managed objects are walked every poll
+	 */
+	private void warnUntracked(MORCatalog catalog) {
+		if (!configuration.isTrackInventory()) {
+			return;
+		}
+		Set<String> untracked = new LinkedHashSet<String>();
+		for (MORCatalogEntry entry : catalog.getCatalog()) {
+			if ((entry.getLane() == null || entry.getLane() == lane) && entry.getInventoryPaths() == null
+					&& (inventoryTracker == null || !inventoryTracker.getTypes().contains(entry.getType()))) {
+				untracked.add(entry.getType());
+			}
+		}
+		if (!untracked.isEmpty()) {
+			LOG.warn("{}: Types {} added to the catalog are not tracked, their managed objects are walked every {} poll until restart",
+					vmwClient.getName(),untracked,lane);
+		}
+	}
+
+	/**
+	 * Returns the job of the next window
+	 * 
+	 * @return {@link MetricCollectionJob}, null until the metadata is loaded
+	 */
+	MetricCollectionJob getJob() {
+		return job;
+	}
+
+	/**
+	 * Fetches the performance counters of the end point through the {@link CounterMetadataCache}, the counters
+	 * are shared with the end points of the same build and only fetched again when the build changes.
+	 */
+	synchronized PerformanceCounterMetadata fetchPerformanceCounters() throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
+		String key = CounterMetadataCache.getKey(vmwClient);
+		PerformanceCounterMetadata shared = counterCache.acquire(key,vmwClient);
+		if (counterKey != null) {
+			counterCache.release(counterKey);
+		}
+		counterKey = key;
+		return shared;
+	}
+
+	private MetricCollectionJob createJob(MORCatalog catalog,PerformanceCounterMetadata perfCounterMetadata) {
 		Map<String, Map<String, MetricDefinition>> metrics = catalog.getMetrics();
 		LOG.info("{}: Catalog configured to collect {} metrics",vmwClient.getName(),metrics.size());
-    	VMWareMetadata metadata = new VMWareMetadata(perfCounterMetadata,metrics);
+    	VMWareMetadata metadata = new VMWareMetadata(perfCounterMetadata,metrics,catalog.getInstanceFilters());
     	
     	// Metric collection job contains all the metadata and clients need to collect data
     	// from the vSphere performance counters
-		this.job = new MetricCollectionJob(metadata,vmwClient,metricClient,catalog);
+		return new MetricCollectionJob(metadata,vmwClient,metricClient,catalog);
+	}
+
+	/**
+	 * Fetches the performance counters of the end point on the reconcile executor while collection runs from
+	 * the snapshot, replacing the job between windows if the counters changed since the snapshot was taken.
+	 * The session of the client is held while it runs.
+	 */
+	private void reconcile(final MORCatalog catalog,final PerformanceCounterMetadata loaded) {
+		reconcileExecutor.submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				vmwClient.getSessionLock().readLock().lock();
+				try {
+					PerformanceCounterMetadata fetched = fetchPerformanceCounters();
+					boolean changed = !fetched.getNameMap().equals(loaded.getNameMap());
+					if (changed) {
+						LOG.info("{}: Performance counters changed since the snapshot, replacing them",vmwClient.getName());
+					}
+					// Shared counters replace those of the snapshot so that a single copy is held
+					counterMetadata = fetched;
+					job = createJob(catalog,fetched);
+					saveSnapshot();
+				} catch (Exception e) {
+					LOG.warn("{}: Unable to reconcile the snapshot, keeping its performance counters",vmwClient.getName(),e);
+				} finally {
+					vmwClient.getSessionLock().readLock().unlock();
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Saves the performance counters and the last inventory of the collector to the snapshot store
+	 */
+	private synchronized void saveSnapshot() {
+		snapshotStore.save(getInstanceUuid(),EndpointSnapshot.of(getInstanceUuid(),counterMetadata,lane,lastInventory));
+		snapshotSaved = System.currentTimeMillis();
+	}
+
+	/**
+	 * Snapshots are keyed by the instance UUID of the end point, which ESXi hosts do not always report
+	 */
+	private String getInstanceUuid() {
+		String instanceUuid = vmwClient.getServiceContent().getAbout().getInstanceUuid();
+		return instanceUuid != null ? instanceUuid : vmwClient.getName();
 	}
 }
@@ -19,8 +19,13 @@ import java.net.URI;
 import java.net.URL;
 import java.security.cert.CertificateException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -42,18 +47,23 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.vmware.connection.Connection;
+import com.vmware.connection.helpers.ContainerViewCache;
 import com.vmware.connection.helpers.GetMOREF;
+import com.vmware.connection.helpers.RetrievePageHandler;
 import com.vmware.vim25.AboutInfo;
 import com.vmware.vim25.InvalidPropertyFaultMsg;
 import com.vmware.vim25.ManagedObjectReference;
-import com.vmware.vim25.PerfCounterInfo;
 import com.vmware.vim25.PerfEntityMetric;
 import com.vmware.vim25.PerfEntityMetricBase;
+import com.vmware.vim25.PerfEntityMetricCSV;
 import com.vmware.vim25.PerfMetricId;
 import com.vmware.vim25.PerfMetricIntSeries;
 import com.vmware.vim25.PerfMetricSeries;
+import com.vmware.vim25.PerfMetricSeriesCSV;
+import com.vmware.vim25.PerfProviderSummary;
 import com.vmware.vim25.PerfQuerySpec;
 import com.vmware.vim25.PerfSampleInfo;
+import com.vmware.vim25.RetrieveOptions;
 import com.vmware.vim25.RuntimeFaultFaultMsg;
 import com.vmware.vim25.ServiceContent;
 import com.vmware.vim25.UserSession;
@@ -78,6 +88,33 @@ public class VMwareClient implements Connection {
     private ManagedObjectReference SERVICE_INSTANCE_REFERENCE;
     @SuppressWarnings("rawtypes")
     private Map headers;
+    private PerfQueryFormat queryFormat = PerfQueryFormat.normal;
+    private long requestTimeout;
+    private PerfMetricAvailabilityCache availabilityCache;
+    private final ContainerViewCache viewCache = new ContainerViewCache(this);
+
+    // Held for reading by work that uses the session from other threads, connect() and disconnect()
+    // take it for writing so the port and service content are not replaced while that work runs
+    private final ReadWriteLock sessionLock = new ReentrantReadWriteLock();
+
+    // Estimated size of the last queryPerf response received by each thread, the response
+    // context of the port is shared by concurrent queries so its headers cannot be used
+    private final ThreadLocal<Long> lastResponseSize = new ThreadLocal<Long>();
+
+    // Duration in nanoseconds of the last queryPerf call made by each thread
+    private final ThreadLocal<Long> lastQueryTime = new ThreadLocal<Long>();
+
+    /**
+     * Value of a sample the end point did not collect
+     */
+    static final long UNSAMPLED = -1;
+
+    /**
+     * Approximate number of bytes of XML used to encode a single sample or value of a performance series
+     */
+    private static final int SAMPLE_ENCODING_SIZE = 64;
+    private static final int VALUE_ENCODING_SIZE = 24;
+    private static final int SERIES_ENCODING_SIZE = 160;
 
 
     /**
@@ -191,83 +228,126 @@ public class VMwareClient implements Connection {
     public Connection connect() {
     	LOG.debug("Monitored entity {} is connecting.",getName());
         if (!isConnected()) {
+            sessionLock.writeLock().lock();
             try {
-                // Variables of the following types for access to the API methods
-                // and to the vSphere inventory.
-                // -- ManagedObjectReference for the ServiceInstance on the Server
-                // -- VimService for access to the vSphere Web service
-                // -- VimPortType for access to methods
-                // -- ServiceContent for access to managed object services
-            	SERVICE_INSTANCE_REFERENCE = new ManagedObjectReference();
-
-                // Declare a host name verifier that will automatically enable
-                // the connection. The host name verifier is invoked during
-                // the SSL handshake.
-                HostnameVerifier hv = new HostnameVerifier() {
-                    public boolean verify(String urlHostName, SSLSession session) {
-                        return true;
-                    }
-                };
-
-                // Create the trust manager.
-                TrustManager[] trustAllCerts = new TrustManager[]{new TrustAllTrustManager()};
-
-                // Create the SSL context
-                SSLContext sc = SSLContext.getInstance("SSL");
-
-                // Create the session context
-                SSLSessionContext sslsc = sc.getServerSessionContext();
-
-                // Initialize the contexts; the session context takes the trust manager.
-                sslsc.setSessionTimeout(0);
-                sc.init(null, trustAllCerts, new java.security.SecureRandom());
-
-                // Use the default socket factory to create the socket for the secure connection
-                HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
-                // Set the default host name verifier to enable the connection.
-                HttpsURLConnection.setDefaultHostnameVerifier(hv);
-
-                // Set up the manufactured managed object reference for the ServiceInstance
-                SERVICE_INSTANCE_REFERENCE.setType("ServiceInstance");
-                SERVICE_INSTANCE_REFERENCE.setValue("ServiceInstance");
-
-                // Create a VimService object to obtain a VimPort binding provider.
-                // The BindingProvider provides access to the protocol fields
-                // in request/response messages. Retrieve the request context
-                // which will be used for processing message requests.
-                vimService = new VimService();
-                vimPort = vimService.getVimPort();
-                Map<String, Object> ctxt = ((BindingProvider) vimPort).getRequestContext();
-
-                // Store the Server URL in the request context and specify true
-                // to maintain the connection between the client and server.
-                // The client API will include the Server's HTTP cookie in its
-                // requests to maintain the session. If you do not set this to true,
-                // the Server will start a new session with each request.
-                ctxt.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, uri.toASCIIString());
-                ctxt.put(BindingProvider.SESSION_MAINTAIN_PROPERTY, true);
-
-                // Retrieve the ServiceContent object and login
-                serviceContent = vimPort.retrieveServiceContent(SERVICE_INSTANCE_REFERENCE);
-                headers = (Map) ((BindingProvider) vimPort).getResponseContext().get(
-                                MessageContext.HTTP_RESPONSE_HEADERS);
-                userSession = vimPort.login(serviceContent.getSessionManager(),
-                        username,
-                        password,
-                        null);
-
-                // Display summary information about the product name, server type, and product version
-                AboutInfo about = serviceContent.getAbout();
-                LOG.info("Successfully connected to {} ({}) using API version {} (of type {})",
-                        getName(), about.getFullName(), about.getApiVersion(), about.getApiType());
+                // The views and the session of a stale connection are released before logging in again,
+                // the end point would otherwise keep them until the session times out
+                if (userSession != null) {
+                    endSession();
+                }
+                userSession = login();
             } catch (Exception e) {
                 LOG.error("Unable to connect to " + getHost(), e);
+            } finally {
+                sessionLock.writeLock().unlock();
             }
         }
         
         return this;
     }
 
+    /**
+     * Logs in to the end point with a new port
+     * 
+     * @return {@link UserSession} of the login
+     * @throws Exception Error connecting or logging in
+     */
+    protected UserSession login() throws Exception {
+        // Variables of the following types for access to the API methods
+        // and to the vSphere inventory.
+        // -- ManagedObjectReference for the ServiceInstance on the Server
+        // -- VimService for access to the vSphere Web service
+        // -- VimPortType for access to methods
+        // -- ServiceContent for access to managed object services
+    	SERVICE_INSTANCE_REFERENCE = new ManagedObjectReference();
+
+        // Declare a host name verifier that will automatically enable
+        // the connection. The host name verifier is invoked during
+        // the SSL handshake.
+        HostnameVerifier hv = new HostnameVerifier() {
+            public boolean verify(String urlHostName, SSLSession session) {
+                return true;
+            }
+        };
+
+        // Create the trust manager.
+        TrustManager[] trustAllCerts = new TrustManager[]{new TrustAllTrustManager()};
+
+        // Create the SSL context
+        SSLContext sc = SSLContext.getInstance("SSL");
+
+        // Create the session context
+        SSLSessionContext sslsc = sc.getServerSessionContext();
+
+        // Initialize the contexts; the session context takes the trust manager.
+        sslsc.setSessionTimeout(0);
+        sc.init(null, trustAllCerts, new java.security.SecureRandom());
+
+        // Use the default socket factory to create the socket for the secure connection
+        HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
+        // Set the default host name verifier to enable the connection.
+        HttpsURLConnection.setDefaultHostnameVerifier(hv);
+
+        // Set up the manufactured managed object reference for the ServiceInstance
+        SERVICE_INSTANCE_REFERENCE.setType("ServiceInstance");
+        SERVICE_INSTANCE_REFERENCE.setValue("ServiceInstance");
+
+        // Create a VimService object to obtain a VimPort binding provider.
+        // The BindingProvider provides access to the protocol fields
+        // in request/response messages. Retrieve the request context
+        // which will be used for processing message requests.
+        vimService = new VimService();
+        vimPort = vimService.getVimPort();
+        Map<String, Object> ctxt = ((BindingProvider) vimPort).getRequestContext();
+
+        // Store the Server URL in the request context and specify true
+        // to maintain the connection between the client and server.
+        // The client API will include the Server's HTTP cookie in its
+        // requests to maintain the session. If you do not set this to true,
+        // the Server will start a new session with each request.
+        ctxt.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, uri.toASCIIString());
+        ctxt.put(BindingProvider.SESSION_MAINTAIN_PROPERTY, true);
+
+        // Abandon requests the end point does not answer, the property names
+        // differ between the JAX-WS implementation of the JDK and the reference one
+        if (requestTimeout > 0) {
+        	Integer timeout = (int) Math.min(requestTimeout,Integer.MAX_VALUE);
+        	ctxt.put("com.sun.xml.internal.ws.connect.timeout",timeout);
+        	ctxt.put("com.sun.xml.internal.ws.request.timeout",timeout);
+        	ctxt.put("com.sun.xml.ws.connect.timeout",timeout);
+        	ctxt.put("com.sun.xml.ws.request.timeout",timeout);
+        }
+
+        // Retrieve the ServiceContent object and login
+        serviceContent = vimPort.retrieveServiceContent(SERVICE_INSTANCE_REFERENCE);
+        headers = (Map) ((BindingProvider) vimPort).getResponseContext().get(
+                        MessageContext.HTTP_RESPONSE_HEADERS);
+        UserSession session = vimPort.login(serviceContent.getSessionManager(),
+                username,
+                password,
+                null);
+
+        // Display summary information about the product name, server type, and product version
+        AboutInfo about = serviceContent.getAbout();
+        LOG.info("Successfully connected to {} ({}) using API version {} (of type {})",
+                getName(), about.getFullName(), about.getApiVersion(), about.getApiType());
+        return session;
+    }
+
+    /**
+     * Destroys the views of the current session and logs it out, errors are logged
+     * since the session may already have ended on the end point
+     */
+    private void endSession() {
+        viewCache.destroyAll();
+        try {
+            getVimPort().logout(getServiceContent().getSessionManager());
+        } catch (Exception e) {
+            LOG.debug("Unable to log out the previous session of {}",getName(),e);
+        }
+        userSession = null;
+    }
+
     /**
      * State of the connection to the end point which is either: true (connected) or false (note connected)
      * 
@@ -287,8 +367,8 @@ public class VMwareClient implements Connection {
         	DateTime startTime = TimeUtils.toDateTime(userSession.getLastActiveTime());
         	DateTime currentTime = new DateTime();
         	DateTime endTime = startTime.plusMinutes(30);
-        	result = endTime.isBeforeNow();
-        	LOG.info("Testing for a stale connection: startTime: {}, endTime: {}, currentTime: {}, stale: {}",
+        	result = !endTime.isBeforeNow();
+        	LOG.debug("Testing for a stale connection: startTime: {}, endTime: {}, currentTime: {}, connected: {}",
         			startTime,endTime,currentTime,result);
         }
         
@@ -302,8 +382,10 @@ public class VMwareClient implements Connection {
     @Override
     public Connection disconnect() {
     	LOG.debug("Monitored entity {} is disconnectiong",getName());
+        sessionLock.writeLock().lock();
         try {
         	if (vimPort != null) {
+        		viewCache.destroyAll();
         		vimPort.logout(serviceContent.getSessionManager());
         	}
         } catch (RuntimeFaultFaultMsg e) {
@@ -314,6 +396,7 @@ public class VMwareClient implements Connection {
             serviceContent = null;
             vimPort = null;
             vimService = null;
+            sessionLock.writeLock().unlock();
         }
         return this;
     }
@@ -333,6 +416,72 @@ public class VMwareClient implements Connection {
         }
     }
     
+    /**
+     * Returns the format requested for performance statistics
+     * 
+     * @return {@link PerfQueryFormat}
+     */
+    public PerfQueryFormat getQueryFormat() {
+    	return queryFormat;
+    }
+
+    /**
+     * Sets the format requested for performance statistics
+     * 
+     * @param queryFormat {@link PerfQueryFormat}
+     */
+    public void setQueryFormat(PerfQueryFormat queryFormat) {
+    	this.queryFormat = queryFormat;
+    }
+
+    /**
+     * Sets the duration after which a request to the end point is abandoned,
+     * applied on the next connection
+     * 
+     * @param requestTimeout Timeout in milliseconds, 0 to wait indefinitely
+     */
+    public void setRequestTimeout(long requestTimeout) {
+    	this.requestTimeout = requestTimeout;
+    }
+    
+    /**
+     * Returns the lock of the session. Work that uses the session outside of the thread
+     * that connects holds its read lock, so that a reconnection waits for that work to
+     * complete before replacing the session.
+     * 
+     * @return {@link ReadWriteLock}
+     */
+    public ReadWriteLock getSessionLock() {
+    	return sessionLock;
+    }
+    
+    /**
+     * Returns the cache of the container views created on this connection
+     * 
+     * @return {@link ContainerViewCache}
+     */
+    public ContainerViewCache getViewCache() {
+    	return viewCache;
+    }
+
+    /**
+     * Returns the cache of available performance counters, null if not used
+     * 
+     * @return {@link PerfMetricAvailabilityCache}
+     */
+    public PerfMetricAvailabilityCache getAvailabilityCache() {
+    	return availabilityCache;
+    }
+
+    /**
+     * Sets the cache used to only request performance counters available on a managed object
+     * 
+     * @param availabilityCache {@link PerfMetricAvailabilityCache}, null to request all catalog counters
+     */
+    public void setAvailabilityCache(PerfMetricAvailabilityCache availabilityCache) {
+    	this.availabilityCache = availabilityCache;
+    }
+    
     /**
      * Returns the current time at the vSphere end point
      * 
@@ -352,81 +501,234 @@ public class VMwareClient implements Connection {
     	return this.getServiceContent().getPropertyCollector();
     }
     
-	private void extractMeasurements(List<Measurement> measurements,String entityName,
+	/**
+	 * Extracts the measurements from statistics returned in the <em>normal</em> format.
+	 * Every sample in the window is extracted, paired with the timestamp of its {@link PerfSampleInfo}.
+	 * Only the series selected by the {@link InstanceFilter} of the managed object type are extracted.
+	 */
+	void extractMeasurements(List<Measurement> measurements,String entityName,
 			String source, PerfEntityMetricBase perfStats,VMWareMetadata metadata) {
 		PerfEntityMetric entityStats = (PerfEntityMetric) perfStats;
+		InstanceFilter filter = metadata.getInstanceFilter(entityStats.getEntity().getType());
 		List<PerfMetricSeries> metricValues = entityStats.getValue();
 		List<PerfSampleInfo> sampleInfos = entityStats.getSampleInfo();
 
+		// Sample times are shared by all of the series of the managed object
+		DateTime[] sampleTimes = new DateTime[sampleInfos.size()];
+		for (int i = 0; i < sampleTimes.length; i++) {
+			sampleTimes[i] = TimeUtils.toDateTime(sampleInfos.get(i).getTimestamp());
+		}
+
 		for (int x = 0; x < metricValues.size(); x++) {
 			PerfMetricIntSeries metricReading = (PerfMetricIntSeries) metricValues.get(x);
-			PerfCounterInfo metricInfo = metadata.getInfoMap().get(metricReading.getId().getCounterId());
-			String metricFullName = PerformanceCounterMetadata.toFullName(metricInfo);
-			if (!sampleInfos.isEmpty()) {
-				PerfSampleInfo sampleInfo = sampleInfos.get(0);
-				DateTime sampleTime = TimeUtils.toDateTime(sampleInfo.getTimestamp());
-				Number sampleValue = metricReading.getValue().iterator().next();
-
-				// if (skew != null) {
-				// sampleTime =
-				// sampleTime.plusSeconds((int)skew.getStandardSeconds());
-				// }
-
-				if (metricReading.getValue().size() > 1) {
-					LOG.warn("Metric {} has more than one value, only using the first",metricFullName);
-				}
-				// Scale data based on the metric
-				sampleValue = PerformanceCounterMetadata.computeValue(metricInfo,sampleValue);
-				String name = metadata.getMetricName(metricFullName);
-				if (name != null) {
-					Measurement measurement = Measurement.builder()
-							.setMetric(name)
-							.setSource(source)
-							.setTimestamp(sampleTime)
-							.setMeasurement(sampleValue).build();
-					measurements.add(measurement);
-					LOG.info("{} @ {} = {} {}", metricFullName, sampleTime,
-							sampleValue,metricInfo.getUnitInfo().getKey());
-				} else {
-					LOG.warn("Skipping collection of metric: {}",metricFullName);
-			    }
-			} else {
-				LOG.warn("Didn't receive any samples when polling for {} on {}",metricFullName,this.getName());
+			String instance = metricReading.getId().getInstance();
+			if (!filter.matches(instance)) {
+				continue;
+			}
+			CounterDispatch counter = metadata.getDispatch(metricReading.getId().getCounterId());
+			if (counter == null) {
+				LOG.warn("Skipping collection of counter: {}",metricReading.getId().getCounterId());
+				continue;
+			}
+			List<Long> values = metricReading.getValue();
+			if (sampleTimes.length == 0 || values.isEmpty()) {
+				LOG.warn("Didn't receive any samples when polling for {} on {}",counter.getFullName(),this.getName());
+				continue;
+			}
+
+			String instanceSource = InstanceFilter.qualify(source,instance);
+			int samples = Math.min(sampleTimes.length,values.size());
+			for (int i = 0; i < samples; i++) {
+				addMeasurement(measurements,instanceSource,counter,sampleTimes[i],values.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Extracts the measurements from statistics returned in the <em>csv</em> format.
+	 * The samples are parsed directly into primitive arrays by {@link PerformanceCSVParser}.
+	 */
+	void extractCSVMeasurements(List<Measurement> measurements,String entityName,
+			String source, PerfEntityMetricCSV entityStats,VMWareMetadata metadata) {
+		long[] sampleTimes;
+		try {
+			sampleTimes = PerformanceCSVParser.parseTimestamps(entityStats.getSampleInfoCSV());
+		} catch (IllegalArgumentException e) {
+			LOG.warn("Skipping samples of {} from {}: {}",entityName,this.getName(),e.getMessage());
+			return;
+		}
+		InstanceFilter filter = metadata.getInstanceFilter(entityStats.getEntity().getType());
+
+		for (PerfMetricSeriesCSV metricReading : entityStats.getValue()) {
+			String instance = metricReading.getId().getInstance();
+			if (!filter.matches(instance)) {
+				continue;
+			}
+			CounterDispatch counter = metadata.getDispatch(metricReading.getId().getCounterId());
+			if (counter == null) {
+				LOG.warn("Skipping collection of counter: {}",metricReading.getId().getCounterId());
+				continue;
+			}
+			long[] values;
+			try {
+				values = PerformanceCSVParser.parseValues(metricReading.getValue());
+			} catch (IllegalArgumentException e) {
+				// Only this series is dropped, the other counters of the entity are still reported
+				LOG.warn("Skipping samples of {} for {} from {}: {}",counter.getFullName(),entityName,this.getName(),e.getMessage());
+				continue;
 			}
+			if (sampleTimes.length == 0 || values.length == 0) {
+				LOG.warn("Didn't receive any samples when polling for {} on {}",counter.getFullName(),this.getName());
+				continue;
+			}
+
+			String instanceSource = InstanceFilter.qualify(source,instance);
+			int samples = Math.min(sampleTimes.length,values.length);
+			for (int i = 0; i < samples; i++) {
+				addMeasurement(measurements,instanceSource,counter,new DateTime(sampleTimes[i]),values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Scales a sample and adds it as a {@link Measurement}. Samples the end point
+	 * could not collect are reported as {@link #UNSAMPLED} and are skipped,
+	 * other negative values are sent as they are.
+	 */
+	private void addMeasurement(List<Measurement> measurements,String source,CounterDispatch counter,
+			DateTime sampleTime,long value) {
+		if (value == UNSAMPLED) {
+			LOG.debug("No sample of {} for {} @ {}",counter.getMetricName(),source,sampleTime);
+			return;
 		}
+		// Scale data based on the metric
+		Number sampleValue = counter.scale(value);
+		Measurement measurement = Measurement.builder()
+				.setMetric(counter.getMetricName())
+				.setSource(source)
+				.setTimestamp(sampleTime)
+				.setMeasurement(sampleValue).build();
+		measurements.add(measurement);
+		LOG.debug("{} {} @ {} = {} {}",source,counter.getMetricName(),sampleTime,
+				sampleValue,counter.getUnit());
 	}
+
     /**
-     * Query vSphere for values of performance metrics
+     * Creates the query specification for a single managed object
      * 
-     * @param querySpec
-     * @return {@link List} List of {@link PerfEntityMetricBase}
-     * @throws RuntimeFaultFaultMsg Any runtime issue
+     * @param mor {@link ManagedObjectReference} to query
+     * @param intervalId Sampling interval in seconds
+     * @param start Start of the collection window
+     * @param end End of the collection window
+     * @param perfMetricIds {@link List} of {@link PerfMetricId}s to collect
+     * @return {@link PerfQuerySpec}
      */
-    public List<PerfEntityMetricBase> getStats(ManagedObjectReference mor,
+    private PerfQuerySpec createQuerySpec(ManagedObjectReference mor,
     		Integer intervalId,DateTime start,DateTime end,
-    		List<PerfMetricId> perfMetricIds) throws RuntimeFaultFaultMsg {
-    	
-    	LOG.debug("interval: {}, start: {}, end: {}",intervalId,start,end);
-    	
-		/*
-		 * Create the query specification for queryPerf().
-		 */
+    		List<PerfMetricId> perfMetricIds) {
 		PerfQuerySpec querySpec = new PerfQuerySpec();
 		querySpec.setEntity(mor);
 		querySpec.setIntervalId(intervalId);
-		querySpec.setFormat("normal");
+		querySpec.setFormat(queryFormat.name());
 		querySpec.setStartTime(TimeUtils.toXMLGregorianCalendar(start));
 		querySpec.setEndTime(TimeUtils.toXMLGregorianCalendar(end));
 		querySpec.getMetricId().addAll(perfMetricIds);
 
-		LOG.info("MOR: {}-{}, Interval: {}, Format: {}, MetricIds: {}, Start: {}, End: {}",
+		LOG.debug("MOR: {}-{}, Interval: {}, Format: {}, MetricIds: {}, Start: {}, End: {}",
 				mor.getType(),
 				mor.getValue(),
 				querySpec.getIntervalId(),
 				querySpec.getFormat(),
 				FluentIterable.from(perfMetricIds).transform(PerformanceCounterMetadata.toStringFunction),
 				start, end);
-    	return this.getVimPort().queryPerf(this.getServiceContent().getPerfManager(),ImmutableList.of(querySpec));
+		return querySpec;
+    }
+
+    /**
+     * Query vSphere for values of performance metrics
+     * 
+     * @param querySpec
+     * @return {@link List} List of {@link PerfEntityMetricBase}
+     * @throws RuntimeFaultFaultMsg Any runtime issue
+     */
+    public List<PerfEntityMetricBase> getStats(ManagedObjectReference mor,
+    		Integer intervalId,DateTime start,DateTime end,
+    		List<PerfMetricId> perfMetricIds) throws RuntimeFaultFaultMsg {
+    	
+    	LOG.debug("interval: {}, start: {}, end: {}",intervalId,start,end);
+    	return getStats(ImmutableList.of(createQuerySpec(mor,intervalId,start,end,perfMetricIds)));
+    }
+
+    /**
+     * Query vSphere for values of performance metrics of several managed objects
+     * in a single round trip to the end point.
+     * 
+     * @param querySpecs {@link List} of {@link PerfQuerySpec}, one per managed object
+     * @return {@link List} List of {@link PerfEntityMetricBase}
+     * @throws RuntimeFaultFaultMsg Any runtime issue
+     */
+    public List<PerfEntityMetricBase> getStats(List<PerfQuerySpec> querySpecs) throws RuntimeFaultFaultMsg {
+    	LOG.debug("Querying {} managed object(s) from {}",querySpecs.size(),getName());
+    	lastResponseSize.remove();
+    	long start = System.nanoTime();
+    	try {
+    		List<PerfEntityMetricBase> stats = this.getVimPort().queryPerf(this.getServiceContent().getPerfManager(),querySpecs);
+    		lastResponseSize.set(estimateResponseSize(stats));
+    		return stats;
+    	} finally {
+    		lastQueryTime.set(System.nanoTime() - start);
+    	}
+    }
+
+    /**
+     * Returns the duration of the last <code>queryPerf</code> call made by the calling thread
+     * 
+     * @return Duration in nanoseconds, -1 if the calling thread has not queried since
+     * its last call to {@link #getMeasurements(Map, Integer, DateTime, DateTime, VMWareMetadata)}
+     */
+    public long getLastQueryTime() {
+    	Long time = lastQueryTime.get();
+    	return time == null ? -1 : time;
+    }
+
+    /**
+     * Returns the estimated size of the last <code>queryPerf</code> response received by the calling thread
+     * 
+     * @return Size in bytes, -1 if the calling thread has not received a response
+     */
+    public long getLastResponseSize() {
+    	Long size = lastResponseSize.get();
+    	return size == null ? -1 : size;
+    }
+
+    /**
+     * Estimates the number of bytes used to encode performance statistics in a SOAP response
+     * 
+     * @param stats {@link List} of {@link PerfEntityMetricBase}
+     * @return Size in bytes
+     */
+    static long estimateResponseSize(List<PerfEntityMetricBase> stats) {
+    	long size = 0;
+    	for (PerfEntityMetricBase perfStat : stats) {
+    		size += SERIES_ENCODING_SIZE;
+    		if (perfStat instanceof PerfEntityMetric) {
+    			PerfEntityMetric entityStats = (PerfEntityMetric) perfStat;
+    			size += (long) entityStats.getSampleInfo().size() * SAMPLE_ENCODING_SIZE;
+    			for (PerfMetricSeries series : entityStats.getValue()) {
+    				size += SERIES_ENCODING_SIZE;
+    				if (series instanceof PerfMetricIntSeries) {
+    					size += (long) ((PerfMetricIntSeries) series).getValue().size() * VALUE_ENCODING_SIZE;
+    				}
+    			}
+    		} else if (perfStat instanceof PerfEntityMetricCSV) {
+    			PerfEntityMetricCSV entityStats = (PerfEntityMetricCSV) perfStat;
+    			size += entityStats.getSampleInfoCSV() == null ? 0 : entityStats.getSampleInfoCSV().length();
+    			for (PerfMetricSeriesCSV series : entityStats.getValue()) {
+    				size += SERIES_ENCODING_SIZE + (series.getValue() == null ? 0 : series.getValue().length());
+    			}
+    		}
+    	}
+    	return size;
     }
 
 	public List<Measurement> getMeasurements(ManagedObjectReference mor,
@@ -455,6 +757,8 @@ public class VMwareClient implements Connection {
 				LOG.debug("perfStat: {}",perfStat.getEntity().getValue());
 				extractMeasurements(measurements,entityName,source,perfStat,metadata);
 
+			} else if (perfStat instanceof PerfEntityMetricCSV) {
+				extractCSVMeasurements(measurements,entityName,source,(PerfEntityMetricCSV) perfStat,metadata);
 			} else {
 				LOG.error("Unrecognized performance entry type received: {}, ignoring",
 						perfStat.getClass().getName());
@@ -462,6 +766,100 @@ public class VMwareClient implements Connection {
 		}
 		return measurements;
 	}
+
+	/**
+	 * Collects the measurements of several managed objects with a single <code>queryPerf</code> call.
+	 * One {@link PerfQuerySpec} is sent per managed object and the returned statistics are
+	 * matched back to their managed object to assign the source.
+	 * 
+	 * @param sources {@link Map} of {@link ManagedObjectReference} to the source name of its measurements
+	 * @param intervalId Sampling interval in seconds
+	 * @param start Start of the collection window
+	 * @param end End of the collection window
+	 * @param metadata {@link VMWareMetadata} performance counters to collect by managed object type
+	 * @return {@link List} of {@link Measurement}
+	 * @throws RuntimeFaultFaultMsg Any runtime issue
+	 */
+	public List<Measurement> getMeasurements(Map<ManagedObjectReference,String> sources,
+			Integer intervalId, DateTime start, DateTime end,
+			VMWareMetadata metadata) throws RuntimeFaultFaultMsg {
+
+		// Forget the previous query so a batch whose specs are all pruned reports none
+		lastResponseSize.remove();
+		lastQueryTime.remove();
+
+		List<Measurement> measurements = new ArrayList<Measurement>();
+		List<PerfQuerySpec> querySpecs = new ArrayList<PerfQuerySpec>(sources.size());
+		Map<String,String> entitySources = new HashMap<String,String>();
+
+		for (Map.Entry<ManagedObjectReference,String> entry : sources.entrySet()) {
+			ManagedObjectReference mor = entry.getKey();
+			List<PerfMetricId> perfMetricIds = metadata.getPerfMetrics(mor.getType());
+			if (availabilityCache != null) {
+				perfMetricIds = availabilityCache.prune(this,mor,intervalId,perfMetricIds,
+						metadata.getInstanceFilter(mor.getType()));
+			}
+			// An empty list of metric ids requests every available counter, so skip the entity instead
+			if (perfMetricIds.isEmpty()) {
+				LOG.warn("No performance counters to collect for {}",entry.getValue());
+				continue;
+			}
+			querySpecs.add(createQuerySpec(mor,intervalId,start,end,perfMetricIds));
+			entitySources.put(mor.getValue(),entry.getValue());
+		}
+
+		if (querySpecs.isEmpty()) {
+			return measurements;
+		}
+
+		List<PerfEntityMetricBase> retrievedStats = getStats(querySpecs);
+		LOG.info("Retrieved performance metrics of {} managed object(s) from {}",retrievedStats.size(),getName());
+
+		/*
+		 * Each PerfEntityMetricBase contains the statistics of a single managed object,
+		 * use its reference to get back to the source it belongs to.
+		 */
+		for (PerfEntityMetricBase perfStat : retrievedStats) {
+			String entityName = perfStat.getEntity().getValue();
+			String source = entitySources.get(entityName);
+
+			if (source == null) {
+				LOG.error("Received performance metrics for unrequested managed object: {}, ignoring",entityName);
+			} else if (perfStat instanceof PerfEntityMetric) {
+				LOG.debug("perfStat: {}",entityName);
+				extractMeasurements(measurements,entityName,source,perfStat,metadata);
+			} else if (perfStat instanceof PerfEntityMetricCSV) {
+				extractCSVMeasurements(measurements,entityName,source,(PerfEntityMetricCSV) perfStat,metadata);
+			} else {
+				LOG.error("Unrecognized performance entry type received: {}, ignoring",
+						perfStat.getClass().getName());
+			}
+		}
+		return measurements;
+	}
+    
+    /**
+     * Query vSphere for the performance counters available on a managed object
+     * 
+     * @param mor {@link ManagedObjectReference} of the managed object
+     * @param intervalId Sampling interval in seconds
+     * @return {@link List} of {@link PerfMetricId}
+     * @throws RuntimeFaultFaultMsg Any runtime issue
+     */
+    public List<PerfMetricId> getAvailablePerfMetrics(ManagedObjectReference mor,Integer intervalId) throws RuntimeFaultFaultMsg {
+    	return this.getVimPort().queryAvailablePerfMetric(this.getServiceContent().getPerfManager(),mor,null,null,intervalId);
+    }
+    
+    /**
+     * Query vSphere for the statistics a managed object provides
+     * 
+     * @param mor {@link ManagedObjectReference} of the managed object
+     * @return {@link PerfProviderSummary}
+     * @throws RuntimeFaultFaultMsg Any runtime issue
+     */
+    public PerfProviderSummary getProviderSummary(ManagedObjectReference mor) throws RuntimeFaultFaultMsg {
+    	return this.getVimPort().queryPerfProviderSummary(this.getServiceContent().getPerfManager(),mor);
+    }
     
     /**
      * Query vSphere to get list of managed objects by their type
@@ -472,15 +870,89 @@ public class VMwareClient implements Connection {
      * @throws InvalidPropertyFaultMsg Invalid property
      */
     public Map<String,ManagedObjectReference> getManagedObjects(String managedObjectType) throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
-        GetMOREF getMOREFs = new GetMOREF(this);
+        GetMOREF getMOREFs = new GetMOREF(this,viewCache);
         ManagedObjectReference root = this.getServiceContent().getRootFolder();
         Map<String,ManagedObjectReference> entities = getMOREFs.inFolderByType(root,managedObjectType);
         return entities;
 	}
     
+    /**
+     * Query vSphere for the running managed objects of several types in a single inventory walk
+     * 
+     * @param managedObjectTypes types of the managed objects to look up
+     * @param previous {@link InventoryIndex} of the previous walk whose entries are reused, null if there is none
+     * @return {@link InventoryIndex}
+     * @throws RuntimeFaultFaultMsg Runtime error occurred
+     * @throws InvalidPropertyFaultMsg Invalid property
+     */
+    public InventoryIndex getInventory(Collection<String> managedObjectTypes,InventoryIndex previous) throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+        GetMOREF getMOREFs = new GetMOREF(this,viewCache);
+        ManagedObjectReference root = this.getServiceContent().getRootFolder();
+        Map<ManagedObjectReference,Map<String,Object>> properties =
+        		getMOREFs.inContainerByTypes(root,getInventoryProperties(managedObjectTypes),new RetrieveOptions());
+        return InventoryIndex.of(getName(),managedObjectTypes,properties,previous);
+    }
+
+    /**
+     * Query vSphere for the managed objects of several types in a single inventory walk, passing
+     * each page of managed objects to a handler as soon as it is retrieved
+     * 
+     * @param managedObjectTypes types of the managed objects to look up
+     * @param pageSize maximum number of managed objects in a page
+     * @param handler {@link RetrievePageHandler} receiving the properties of the managed objects of each page,
+     * see {@link InventoryIndex#of(String, Collection, Map, InventoryIndex)}
+     * @throws RuntimeFaultFaultMsg Runtime error occurred
+     * @throws InvalidPropertyFaultMsg Invalid property
+     */
+    public void getInventory(Collection<String> managedObjectTypes,int pageSize,RetrievePageHandler handler)
+    		throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+        getInventory(this.getServiceContent().getRootFolder(),managedObjectTypes,pageSize,handler);
+    }
+
+    /**
+     * Query vSphere for the managed objects of several types under a container in a single inventory walk,
+     * passing each page of managed objects to a handler as soon as it is retrieved
+     * 
+     * @param container {@link ManagedObjectReference} of the folder, datacenter or compute resource to walk
+     * @param managedObjectTypes types of the managed objects to look up
+     * @param pageSize maximum number of managed objects in a page
+     * @param handler {@link RetrievePageHandler} receiving the properties of the managed objects of each page
+     * @throws RuntimeFaultFaultMsg Runtime error occurred
+     * @throws InvalidPropertyFaultMsg Invalid property
+     */
+    public void getInventory(ManagedObjectReference container,Collection<String> managedObjectTypes,int pageSize,
+    		RetrievePageHandler handler) throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+        GetMOREF getMOREFs = new GetMOREF(this,viewCache);
+        RetrieveOptions options = new RetrieveOptions();
+        options.setMaxObjects(pageSize);
+        getMOREFs.inContainerByTypes(container,getInventoryProperties(managedObjectTypes),options,handler);
+    }
+
+    /**
+     * Looks up a managed entity by its inventory path
+     * 
+     * @param inventoryPath Path of the entity, such as <code>Datacenter/host/Cluster</code>
+     * @return {@link ManagedObjectReference}, null if there is no entity at the path
+     * @throws RuntimeFaultFaultMsg Runtime error occurred
+     */
+    public ManagedObjectReference findByInventoryPath(String inventoryPath) throws RuntimeFaultFaultMsg {
+        return this.getVimPort().findByInventoryPath(this.getServiceContent().getSearchIndex(),inventoryPath);
+    }
+
+    /**
+     * Virtual machines and hosts also fetch their power and connection state so that only running ones are collected
+     */
+    private static Map<String,String[]> getInventoryProperties(Collection<String> managedObjectTypes) {
+        Map<String,String[]> typeProperties = new LinkedHashMap<String,String[]>();
+        for (String type : managedObjectTypes) {
+        	typeProperties.put(type,InventoryIndex.getProperties(type));
+        }
+        return typeProperties;
+    }
+    
     public ManagedObjectReference getVMByName(String vmName) throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
     	ManagedObjectReference mor = null;
-		GetMOREF search = new GetMOREF(this);
+		GetMOREF search = new GetMOREF(this,viewCache);
 		
 		mor = search.vmByVMname(vmName,this.getPropertyCollector());
 		return mor;
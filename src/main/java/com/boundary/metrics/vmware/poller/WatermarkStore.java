@@ -0,0 +1,123 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the collection watermarks of each end point and lane to a local properties file
+ * so that collection resumes where it stopped after a restart. Each watermark is the start
+ * of the oldest window that has not been collected yet, stored in milliseconds since the epoch.
+ *
+ * The file is rewritten on each update by writing a temporary file and renaming it over
+ * the previous one, so a crash never leaves a partially written file behind.
+ */
+public class WatermarkStore {
+
+	private static final Logger LOG = LoggerFactory.getLogger(WatermarkStore.class);
+
+	private final File file;
+	private final Properties watermarks = new Properties();
+
+	/**
+	 * Constructor, loads the watermarks of the file if it exists
+	 *
+	 * @param file {@link File} holding the watermarks
+	 */
+	public WatermarkStore(File file) {
+		this.file = file;
+		if (file.exists()) {
+			InputStream in = null;
+			try {
+				in = new FileInputStream(file);
+				watermarks.load(in);
+				LOG.info("Loaded {} watermarks from {}",watermarks.size(),file);
+			} catch (IOException e) {
+				LOG.warn("Unable to load watermarks from {}: {}",file,e.getMessage());
+			} finally {
+				close(in);
+			}
+		}
+	}
+
+	/**
+	 * Returns a watermark
+	 *
+	 * @param key Identifier of the end point and lane
+	 * @return {@link DateTime} or null if there is no valid watermark for the key
+	 */
+	public synchronized DateTime get(String key) {
+		String value = watermarks.getProperty(key);
+		if (value != null) {
+			try {
+				return new DateTime(Long.parseLong(value));
+			} catch (NumberFormatException e) {
+				LOG.warn("Ignoring invalid watermark {}={} in {}",key,value,file);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Updates a watermark and writes all of the watermarks to the file
+	 *
+	 * @param key Identifier of the end point and lane
+	 * @param watermark {@link DateTime} start of the oldest window that has not been collected
+	 */
+	public synchronized void put(String key,DateTime watermark) {
+		watermarks.setProperty(key,Long.toString(watermark.getMillis()));
+
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(temp);
+			watermarks.store(out,"Collection watermarks, milliseconds since the epoch");
+			out.close();
+			out = null;
+			if (!temp.renameTo(file)) {
+				// Platforms that do not rename over an existing file
+				file.delete();
+				if (!temp.renameTo(file)) {
+					throw new IOException("unable to rename " + temp);
+				}
+			}
+		} catch (IOException e) {
+			LOG.warn("Unable to save watermarks to {}: {}",file,e.getMessage());
+		} finally {
+			close(out);
+		}
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				LOG.debug("Unable to close watermark file",e);
+			}
+		}
+	}
+}
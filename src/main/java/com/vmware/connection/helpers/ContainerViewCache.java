@@ -0,0 +1,111 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.vmware.connection.helpers;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Ordering;
+import com.vmware.connection.Connection;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reuses the container views of a connection.
+ *
+ * A container view lives on the end point until it is destroyed or the session ends. Views are
+ * cached by container and set of types so that repeated lookups share a single view, and are
+ * destroyed when the connection is closed.
+ */
+public class ContainerViewCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContainerViewCache.class);
+
+    private final Connection connection;
+    private final ConcurrentMap<String, ManagedObjectReference> views =
+            new ConcurrentHashMap<String, ManagedObjectReference>();
+
+    /**
+     * Constructor
+     * @param connection {@link Connection} the views are created on
+     */
+    public ContainerViewCache(final Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Returns the recursive container view of the types in the container, creating it on first use
+     *
+     * @param container {@link ManagedObjectReference} of the container
+     * @param morefTypes types of managed objects in the view
+     * @return {@link ManagedObjectReference} of the container view
+     * @throws RuntimeFaultFaultMsg thrown when the view cannot be created
+     */
+    public ManagedObjectReference getView(
+            final ManagedObjectReference container,
+            final Collection<String> morefTypes
+    ) throws RuntimeFaultFaultMsg {
+        List<String> types = Ordering.natural().sortedCopy(morefTypes);
+        String key = container.getType() + ":" + container.getValue() + ":" + Joiner.on(',').join(types);
+
+        ManagedObjectReference view = views.get(key);
+        if (view == null) {
+            synchronized (this) {
+                view = views.get(key);
+                if (view == null) {
+                    view = connection.getVimPort().createContainerView(
+                            connection.getServiceContent().getViewManager(), container, types, true);
+                    views.put(key, view);
+                    LOG.debug("Created container view {} of {}", view.getValue(), key);
+                }
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Returns the number of live container views
+     *
+     * @return number of views
+     */
+    public int size() {
+        return views.size();
+    }
+
+    /**
+     * Destroys all of the views on the end point
+     */
+    public synchronized void destroyAll() {
+        List<ManagedObjectReference> destroyed = new ArrayList<ManagedObjectReference>(views.values());
+        views.clear();
+        for (ManagedObjectReference view : destroyed) {
+            try {
+                connection.getVimPort().destroyView(view);
+            } catch (Exception e) {
+                LOG.debug("Unable to destroy container view {}", view.getValue(), e);
+            }
+        }
+        if (!destroyed.isEmpty()) {
+            LOG.debug("Destroyed {} container views", destroyed.size());
+        }
+    }
+}
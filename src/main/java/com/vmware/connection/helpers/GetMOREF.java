@@ -38,7 +38,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -53,13 +55,25 @@ public class GetMOREF extends BaseHelper {
 
     private VimPortType vimPort;
     private ServiceContent serviceContent;
+    private final ContainerViewCache viewCache;
 
     /**
      * Constructor
      * @param connection Instance of a {@link Connection}
      */
     public GetMOREF(final Connection connection) {
+        this(connection, null);
+    }
+
+    /**
+     * Constructor
+     * @param connection Instance of a {@link Connection}
+     * @param viewCache {@link ContainerViewCache} of the connection, when null each lookup
+     *                  creates a container view that lives until the session ends
+     */
+    public GetMOREF(final Connection connection, final ContainerViewCache viewCache) {
         super(connection);
+        this.viewCache = viewCache;
     }
 
     /**
@@ -119,10 +133,14 @@ public class GetMOREF extends BaseHelper {
     ) throws RuntimeFaultFaultMsg {
         init();
 
-        ManagedObjectReference viewManager = serviceContent.getViewManager();
-        ManagedObjectReference containerView =
-                vimPort.createContainerView(viewManager, container,
-                        Arrays.asList(morefType), true);
+        ManagedObjectReference containerView;
+        if (viewCache != null) {
+            containerView = viewCache.getView(container, Arrays.asList(morefType));
+        } else {
+            ManagedObjectReference viewManager = serviceContent.getViewManager();
+            containerView = vimPort.createContainerView(viewManager, container,
+                    Arrays.asList(morefType), true);
+        }
 
         return new PropertyFilterSpec[]{
                 new PropertyFilterSpecBuilder()
@@ -202,6 +220,159 @@ public class GetMOREF extends BaseHelper {
         return tgtMoref;
     }
 
+    /**
+     * Returns the properties of all the MOREFs of several types that are present under the
+     * container, retrieved with a single property filter and paged through once.
+     *
+     * @param container       {@link com.vmware.vim25.ManagedObjectReference} of the container to begin the
+     *                        search from
+     * @param morefTypes      Types of the managed entities that need to be searched
+     * @param retrieveOptions {@link RetrieveOptions}
+     * @param morefProperties Properties to be fetched for each moref
+     * @return Map of MOREF and Map of name value pair of properties requested of
+     *         the managed objects present. If none exist then empty Map is
+     *         returned
+     * @throws com.vmware.vim25.InvalidPropertyFaultMsg thrown if there is a property error
+     * @throws com.vmware.vim25.RuntimeFaultFaultMsg thrown if there is a runtime error
+     */
+    public Map<ManagedObjectReference, Map<String, Object>> inContainerByTypes(
+            final ManagedObjectReference container,
+            final Collection<String> morefTypes,
+            final RetrieveOptions retrieveOptions,
+            final String... morefProperties
+    ) throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+        Map<String, String[]> typeProperties = new LinkedHashMap<String, String[]>();
+        for (String morefType : morefTypes) {
+            typeProperties.put(morefType, morefProperties);
+        }
+        return inContainerByTypes(container, typeProperties, retrieveOptions);
+    }
+
+    /**
+     * Returns the properties of all the MOREFs of several types that are present under the
+     * container, fetching different properties for each type, retrieved with a single property
+     * filter and paged through once.
+     *
+     * @param container       {@link com.vmware.vim25.ManagedObjectReference} of the container to begin the
+     *                        search from
+     * @param typeProperties  Types of the managed entities that need to be searched, along with the
+     *                        properties to be fetched for each moref of the type
+     * @param retrieveOptions {@link RetrieveOptions}
+     * @return Map of MOREF and Map of name value pair of properties requested of
+     *         the managed objects present. If none exist then empty Map is
+     *         returned
+     * @throws com.vmware.vim25.InvalidPropertyFaultMsg thrown if there is a property error
+     * @throws com.vmware.vim25.RuntimeFaultFaultMsg thrown if there is a runtime error
+     */
+    public Map<ManagedObjectReference, Map<String, Object>> inContainerByTypes(
+            final ManagedObjectReference container,
+            final Map<String, String[]> typeProperties,
+            final RetrieveOptions retrieveOptions
+    ) throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+        final Map<ManagedObjectReference, Map<String, Object>> tgtMoref = Maps.newHashMap();
+        inContainerByTypes(container, typeProperties, retrieveOptions, new RetrievePageHandler() {
+            @Override
+            public void handle(Map<ManagedObjectReference, Map<String, Object>> page) {
+                tgtMoref.putAll(page);
+            }
+        });
+        return tgtMoref;
+    }
+
+    /**
+     * Streams the properties of all the MOREFs of several types that are present under the
+     * container, passing each page of results to a handler as soon as it is retrieved. The
+     * size of the pages is bounded by {@link RetrieveOptions#getMaxObjects()}.
+     *
+     * @param container       {@link com.vmware.vim25.ManagedObjectReference} of the container to begin the
+     *                        search from
+     * @param typeProperties  Types of the managed entities that need to be searched, along with the
+     *                        properties to be fetched for each moref of the type
+     * @param retrieveOptions {@link RetrieveOptions}
+     * @param handler         {@link RetrievePageHandler} receiving each page
+     * @throws com.vmware.vim25.InvalidPropertyFaultMsg thrown if there is a property error
+     * @throws com.vmware.vim25.RuntimeFaultFaultMsg thrown if there is a runtime error
+     */
+    public void inContainerByTypes(
+            final ManagedObjectReference container,
+            final Map<String, String[]> typeProperties,
+            final RetrieveOptions retrieveOptions,
+            final RetrievePageHandler handler
+    ) throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg {
+        init();
+
+        ManagedObjectReference containerView;
+        if (viewCache != null) {
+            containerView = viewCache.getView(container, typeProperties.keySet());
+        } else {
+            containerView = vimPort.createContainerView(serviceContent.getViewManager(), container,
+                    Lists.newArrayList(typeProperties.keySet()), true);
+        }
+
+        PropertySpec[] propertySpecs = new PropertySpec[typeProperties.size()];
+        int i = 0;
+        for (Map.Entry<String, String[]> morefType : typeProperties.entrySet()) {
+            propertySpecs[i++] = new PropertySpecBuilder()
+                    .all(Boolean.FALSE)
+                    .type(morefType.getKey())
+                    .pathSet(morefType.getValue());
+        }
+        PropertyFilterSpec propertyFilterSpec = new PropertyFilterSpecBuilder()
+                .propSet(propertySpecs)
+                .objectSet(
+                        new ObjectSpecBuilder()
+                                .obj(containerView)
+                                .skip(Boolean.TRUE)
+                                .selectSet(
+                                        new TraversalSpecBuilder()
+                                                .name("view")
+                                                .path("view")
+                                                .skip(false)
+                                                .type("ContainerView")
+                                )
+                );
+
+        final ManagedObjectReference propertyCollector = serviceContent.getPropertyCollector();
+        RetrieveResult results = vimPort.retrievePropertiesEx(
+                propertyCollector,
+                Arrays.asList(propertyFilterSpec),
+                retrieveOptions);
+
+        while (results != null) {
+            final Map<ManagedObjectReference, Map<String, Object>> page = Maps.newHashMap();
+            for (ObjectContent oc : results.getObjects()) {
+                Map<String, Object> propMap = Maps.newHashMap();
+                List<DynamicProperty> dps = oc.getPropSet();
+                if (dps != null) {
+                    for (DynamicProperty dp : dps) {
+                        propMap.put(dp.getName(), dp.getVal());
+                    }
+                }
+                page.put(oc.getObj(), propMap);
+            }
+            // Release the retrieved page before handing it over so only one page is held at a time
+            final String token = results.getToken();
+            results = null;
+            boolean handled = false;
+            try {
+                handler.handle(page);
+                handled = true;
+            } finally {
+                // The property collector holds the remaining pages until they are retrieved or cancelled
+                if (!handled && token != null) {
+                    try {
+                        vimPort.cancelRetrievePropertiesEx(propertyCollector, token);
+                    } catch (Exception e) {
+                        LOG.debug("Unable to cancel the retrieval of the remaining pages", e);
+                    }
+                }
+            }
+            if (token != null) {
+                results = vimPort.continueRetrievePropertiesEx(propertyCollector, token);
+            }
+        }
+    }
+
     private void resultsToTgtMorefMap(RetrieveResult results, Map<String, ManagedObjectReference> tgtMoref) {
         List<ObjectContent> oCont = (results != null) ? results.getObjects() : null;
 
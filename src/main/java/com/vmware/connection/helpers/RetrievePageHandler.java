@@ -0,0 +1,39 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.vmware.connection.helpers;
+
+import com.vmware.vim25.InvalidPropertyFaultMsg;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+
+import java.util.Map;
+
+/**
+ * Receives the pages of a property retrieval as they arrive, so that the managed objects of a
+ * page can be processed while the next page is retrieved and no more than one page is held at once.
+ */
+public interface RetrievePageHandler {
+
+    /**
+     * Handles one page of a property retrieval
+     *
+     * @param page Map of MOREF and Map of name value pair of properties requested of the
+     *             managed objects of the page
+     * @throws InvalidPropertyFaultMsg thrown if there is a property error, ends the retrieval
+     * @throws RuntimeFaultFaultMsg thrown if there is a runtime error, ends the retrieval
+     */
+    void handle(Map<ManagedObjectReference, Map<String, Object>> page)
+            throws RuntimeFaultFaultMsg, InvalidPropertyFaultMsg;
+}
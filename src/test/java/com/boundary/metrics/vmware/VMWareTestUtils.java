@@ -50,6 +50,7 @@ import com.google.common.io.Resources;
 import com.sun.jersey.api.client.Client;
 import com.vmware.connection.Connection;
 import com.vmware.vim25.ElementDescription;
+import com.vmware.vim25.ManagedObjectReference;
 import com.vmware.vim25.PerfCounterInfo;
 import com.vmware.vim25.PerfStatsType;
 import com.vmware.vim25.PerfSummaryType;
@@ -188,4 +189,18 @@ public class VMWareTestUtils {
 		info.setStatsType(statsType);
 		return info; 
 	}
+
+	/**
+	 * Creates a managed object reference
+	 * 
+	 * @param type managed object type
+	 * @param value value of the reference
+	 * @return {@link ManagedObjectReference}
+	 */
+	static public ManagedObjectReference mor(String type,String value) {
+		ManagedObjectReference mor = new ManagedObjectReference();
+		mor.setType(type);
+		mor.setValue(value);
+		return mor;
+	}
 }
@@ -0,0 +1,80 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdaptiveBatchSizerTest {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long SLOW = TimeUnit.SECONDS.toNanos(5);
+
+	private AdaptiveBatchSizer sizer;
+
+	@Before
+	public void setUp() {
+		sizer = new AdaptiveBatchSizer(64,8,80,2000,1000);
+	}
+
+	@Test
+	public void testIncrease() {
+		sizer.onSuccess(64,FAST,100);
+		assertEquals("check increase",64 + AdaptiveBatchSizer.ADDITIVE_INCREASE,sizer.getBatchSize());
+		sizer.onSuccess(72,FAST,100);
+		sizer.onSuccess(80,FAST,100);
+		assertEquals("check maximum",80,sizer.getBatchSize());
+	}
+
+	@Test
+	public void testPartialBatchDoesNotIncrease() {
+		sizer.onSuccess(10,FAST,100);
+		assertEquals("check unchanged",64,sizer.getBatchSize());
+	}
+
+	@Test
+	public void testSlowQueryDecreases() {
+		sizer.onSuccess(64,SLOW,100);
+		assertEquals("check decrease",32,sizer.getBatchSize());
+		// A concurrent query started with the previous batch size does not decrease it again
+		sizer.onSuccess(16,SLOW,100);
+		assertEquals("check single decrease",32,sizer.getBatchSize());
+	}
+
+	@Test
+	public void testLargeResponseDecreases() {
+		sizer.onSuccess(64,FAST,5000);
+		assertEquals("check decrease",32,sizer.getBatchSize());
+	}
+
+	@Test
+	public void testFaultDecreases() {
+		sizer.onFault(64);
+		sizer.onFault(32);
+		sizer.onFault(16);
+		sizer.onFault(8);
+		assertEquals("check minimum",8,sizer.getBatchSize());
+		assertEquals("check faults",4,sizer.getFaultMeter().getCount());
+	}
+
+	@Test
+	public void testInitialSizeBounded() {
+		assertEquals("check bounded",80,new AdaptiveBatchSizer(500,8,80,2000,0).getBatchSize());
+	}
+}
@@ -0,0 +1,78 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+
+import org.junit.Test;
+
+import com.boundary.metrics.vmware.VMWareTestUtils;
+import com.vmware.vim25.PerfStatsType;
+import com.vmware.vim25.PerfSummaryType;
+
+public class CounterMetadataCacheTest {
+
+	/**
+	 * Cache counting the fetches instead of querying the end point
+	 */
+	private static class CountingCache extends CounterMetadataCache {
+		private int fetches = 0;
+
+		@Override
+		PerformanceCounterMetadata fetch(VMwareClient client) {
+			fetches++;
+			PerformanceCounterMetadata metadata = new PerformanceCounterMetadata();
+			metadata.put(VMWareTestUtils.buildPerfCounterInfo("cpu",2,new Integer(1),"usage",PerfSummaryType.AVERAGE,PerfStatsType.RATE));
+			return metadata;
+		}
+	}
+
+	private final VMwareClient esx1 = new VMwareClient(URI.create("https://esx1.example.com/sdk"),"user","password","esx1");
+	private final VMwareClient esx2 = new VMwareClient(URI.create("https://esx2.example.com/sdk"),"user","password","esx2");
+
+	@Test
+	public void testShared() throws Exception {
+		CountingCache cache = new CountingCache();
+
+		PerformanceCounterMetadata first = cache.acquire("HostAgent-2068190-5.5",esx1);
+		PerformanceCounterMetadata second = cache.acquire("HostAgent-2068190-5.5",esx2);
+		assertSame("check counters shared",first,second);
+		assertEquals("check single fetch",1,cache.fetches);
+
+		PerformanceCounterMetadata other = cache.acquire("HostAgent-3029944-6.0",esx2);
+		assertNotSame("check other build",first,other);
+		assertEquals("check fetch of other build",2,cache.fetches);
+		assertEquals("check builds",2,cache.size());
+	}
+
+	@Test
+	public void testRelease() throws Exception {
+		CountingCache cache = new CountingCache();
+
+		cache.acquire("HostAgent-2068190-5.5",esx1);
+		cache.acquire("HostAgent-2068190-5.5",esx2);
+		cache.release("HostAgent-2068190-5.5");
+		assertEquals("check held while referenced",1,cache.size());
+		cache.release("HostAgent-2068190-5.5");
+		assertEquals("check dropped",0,cache.size());
+
+		cache.acquire("HostAgent-2068190-5.5",esx1);
+		assertEquals("check fetched again",2,cache.fetches);
+	}
+}
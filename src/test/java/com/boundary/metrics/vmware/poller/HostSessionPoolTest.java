@@ -0,0 +1,62 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class HostSessionPoolTest {
+
+	@Test
+	public void testHostUri() throws Exception {
+		MonitoredEntity entity = new MonitoredEntity(URI.create("https://vcenter.example.com:8443/sdk/vimService"),
+				"user","password","vcenter","catalog.json");
+		HostSessionPool pool = new HostSessionPool(entity);
+
+		HostSession session = pool.get("esx1.example.com");
+		assertEquals("check host","esx1.example.com",session.getClient().getHost());
+		assertEquals("check port",8443,session.getClient().getPort().intValue());
+		assertEquals("check path","/sdk/vimService",session.getClient().getURL().getPath());
+		assertEquals("check name","vcenter-esx1.example.com",session.getClient().getName());
+		assertEquals("check host user","user",session.getClient().getUsername());
+		assertTrue("check available",session.isAvailable());
+
+		assertSame("check session reused",session,pool.get("esx1.example.com"));
+		pool.get("esx2.example.com");
+		assertEquals("check sessions",2,pool.size());
+		pool.stop();
+		assertEquals("check closed",0,pool.size());
+	}
+
+	@Test
+	public void testRetain() throws Exception {
+		MonitoredEntity entity = new MonitoredEntity(URI.create("https://vcenter.example.com/sdk"),
+				"user","password","vcenter","catalog.json");
+		HostSessionPool pool = new HostSessionPool(entity);
+		HostSession kept = pool.get("esx1.example.com");
+		pool.get("esx2.example.com");
+
+		pool.retain(ImmutableSet.of("esx1.example.com"));
+		assertEquals("check sessions",1,pool.size());
+		assertSame("check session kept",kept,pool.get("esx1.example.com"));
+	}
+}
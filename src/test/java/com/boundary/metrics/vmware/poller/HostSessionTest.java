@@ -0,0 +1,109 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static com.boundary.metrics.vmware.VMWareTestUtils.mor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.vmware.vim25.ManagedObjectReference;
+
+public class HostSessionTest {
+
+	/**
+	 * Session counting the walks of a host that runs two virtual machines named <em>web</em>
+	 */
+	private static class CountingSession extends HostSession {
+		private int walks = 0;
+
+		CountingSession() {
+			super(new VMwareClient(URI.create("https://esx1.example.com/sdk"),"user","password","esx1"),
+					new AdaptiveBatchSizer(64,8,80,2000,0));
+		}
+
+		@Override
+		InventoryIndex getHostInventory(InventoryIndex previous) {
+			walks++;
+			Map<ManagedObjectReference,Map<String,Object>> properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+			properties.put(mor("VirtualMachine","1"),ImmutableMap.<String,Object>of(InventoryIndex.NAME_PROPERTY,"web",
+					InventoryIndex.INSTANCE_UUID_PROPERTY,"uuid-1"));
+			properties.put(mor("VirtualMachine","2"),ImmutableMap.<String,Object>of(InventoryIndex.NAME_PROPERTY,"web",
+					InventoryIndex.INSTANCE_UUID_PROPERTY,"uuid-2"));
+			return InventoryIndex.of("esx1",ImmutableList.of("VirtualMachine"),properties,previous);
+		}
+	}
+
+	private static InventoryEntry entry(String value,String name,String instanceUuid) {
+		return new InventoryEntry("vcenter",mor("VirtualMachine",value),name,null,instanceUuid);
+	}
+
+	@Test
+	public void testUnresolved() throws Exception {
+		CountingSession session = new CountingSession();
+		InventoryEntry web = entry("vm-10","web","uuid-1");
+		InventoryEntry moving = entry("vm-11","moving","uuid-3");
+
+		List<InventoryEntry> unresolved = new ArrayList<InventoryEntry>();
+		Map<ManagedObjectReference,String> sources = session.resolve(ImmutableList.of(web,moving),unresolved);
+		assertEquals("check resolved",1,sources.size());
+		assertEquals("check host managed object","1",sources.keySet().iterator().next().getValue());
+		assertEquals("check unresolved",1,unresolved.size());
+		assertSame("check unresolved entry",moving,unresolved.get(0));
+	}
+
+	@Test
+	public void testRefreshLimited() throws Exception {
+		CountingSession session = new CountingSession();
+		List<InventoryEntry> batch = ImmutableList.of(entry("vm-10","web","uuid-1"),entry("vm-11","moving","uuid-3"));
+
+		session.resolve(batch,new ArrayList<InventoryEntry>());
+		session.resolve(batch,new ArrayList<InventoryEntry>());
+		session.resolve(batch,new ArrayList<InventoryEntry>());
+		assertEquals("check single walk",1,session.walks);
+
+		session.fail(new RuntimeException("test"));
+		session.resolve(batch,new ArrayList<InventoryEntry>());
+		assertEquals("check walk after failure",2,session.walks);
+	}
+
+	@Test
+	public void testSameName() throws Exception {
+		CountingSession session = new CountingSession();
+		InventoryEntry first = entry("vm-10","web","uuid-1").qualify();
+		InventoryEntry second = entry("vm-12","web","uuid-2").qualify();
+		InventoryEntry unknown = entry("vm-13","web",null);
+
+		List<InventoryEntry> unresolved = new ArrayList<InventoryEntry>();
+		Map<ManagedObjectReference,String> sources = session.resolve(ImmutableList.of(first,second,unknown),unresolved);
+		assertEquals("check resolved",2,sources.size());
+		Map<String,String> byValue = new HashMap<String,String>();
+		for (Map.Entry<ManagedObjectReference,String> source : sources.entrySet()) {
+			byValue.put(source.getKey().getValue(),source.getValue());
+		}
+		assertEquals("check first","vcenter-web-vm-10",byValue.get("1"));
+		assertEquals("check second","vcenter-web-vm-12",byValue.get("2"));
+		assertEquals("check without instance UUID",ImmutableList.of(unknown),unresolved);
+	}
+}
@@ -0,0 +1,56 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class InstanceFilterTest {
+
+	@Test
+	public void testAggregate() {
+		InstanceFilter filter = InstanceFilter.of(null);
+		assertEquals("check query instance","",filter.getQueryInstance());
+		assertTrue("check aggregate",filter.matches(""));
+		assertFalse("check instance",filter.matches("0"));
+	}
+
+	@Test
+	public void testAll() {
+		InstanceFilter filter = InstanceFilter.of("*");
+		assertEquals("check query instance","*",filter.getQueryInstance());
+		assertTrue("check aggregate",filter.matches(""));
+		assertTrue("check instance",filter.matches("0"));
+	}
+
+	@Test
+	public void testPattern() {
+		InstanceFilter filter = InstanceFilter.of("vmnic[0-9]+");
+		assertEquals("check query instance","*",filter.getQueryInstance());
+		assertTrue("check pattern",filter.isPattern());
+		assertFalse("check aggregate",filter.matches(""));
+		assertTrue("check instance",filter.matches("vmnic1"));
+		assertFalse("check other instance",filter.matches("vmhba1"));
+	}
+
+	@Test
+	public void testQualify() {
+		assertEquals("check aggregate source","vc-vm-1",InstanceFilter.qualify("vc-vm-1",""));
+		assertEquals("check instance source","vc-vm-1-vmnic0",InstanceFilter.qualify("vc-vm-1","vmnic0"));
+	}
+}
@@ -0,0 +1,260 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static com.boundary.metrics.vmware.VMWareTestUtils.mor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.vmware.vim25.HostSystemConnectionState;
+import com.vmware.vim25.HostSystemPowerState;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.VirtualMachineConnectionState;
+import com.vmware.vim25.VirtualMachinePowerState;
+
+public class InventoryIndexTest {
+
+	@Test
+	public void testIndex() {
+		Map<ManagedObjectReference,Map<String,Object>> properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		properties.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		properties.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","db"));
+		properties.put(mor("HostSystem","host-1"),ImmutableMap.<String,Object>of("name","esx1"));
+
+		InventoryIndex index = InventoryIndex.of("vcenter",ImmutableList.of("VirtualMachine","HostSystem","Datastore"),properties,null);
+		assertEquals("check size",3,index.size());
+		assertEquals("check virtual machines",2,index.getEntries("VirtualMachine").size());
+		assertEquals("check vm-2","db",index.getEntries("VirtualMachine").get("vm-2").getName());
+		assertEquals("check host-1","esx1",index.getEntries("HostSystem").get("host-1").getName());
+		assertTrue("check no datastores",index.getEntries("Datastore").isEmpty());
+		assertTrue("check not retrieved",index.getEntries("ClusterComputeResource").isEmpty());
+	}
+
+	@Test
+	public void testRunning() {
+		Map<ManagedObjectReference,Map<String,Object>> properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		properties.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web",
+				InventoryIndex.POWER_STATE_PROPERTY,VirtualMachinePowerState.POWERED_ON,
+				InventoryIndex.CONNECTION_STATE_PROPERTY,VirtualMachineConnectionState.CONNECTED));
+		properties.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","db",
+				InventoryIndex.POWER_STATE_PROPERTY,VirtualMachinePowerState.POWERED_OFF,
+				InventoryIndex.CONNECTION_STATE_PROPERTY,VirtualMachineConnectionState.CONNECTED));
+		properties.put(mor("VirtualMachine","vm-3"),ImmutableMap.<String,Object>of("name","app",
+				InventoryIndex.POWER_STATE_PROPERTY,VirtualMachinePowerState.POWERED_ON,
+				InventoryIndex.CONNECTION_STATE_PROPERTY,VirtualMachineConnectionState.ORPHANED));
+		properties.put(mor("HostSystem","host-1"),ImmutableMap.<String,Object>of("name","esx1",
+				InventoryIndex.POWER_STATE_PROPERTY,HostSystemPowerState.POWERED_ON,
+				InventoryIndex.CONNECTION_STATE_PROPERTY,HostSystemConnectionState.NOT_RESPONDING));
+		properties.put(mor("Datastore","datastore-1"),ImmutableMap.<String,Object>of("name","nfs"));
+
+		InventoryIndex index = InventoryIndex.of("vcenter",ImmutableList.of("VirtualMachine","HostSystem","Datastore"),properties,null);
+		assertEquals("check running virtual machines",1,index.getEntries("VirtualMachine").size());
+		assertEquals("check vm-1","web",index.getEntries("VirtualMachine").get("vm-1").getName());
+		assertEquals("check skipped virtual machines",2,index.getSkipped("VirtualMachine"));
+		assertTrue("check no running hosts",index.getEntries("HostSystem").isEmpty());
+		assertEquals("check skipped hosts",1,index.getSkipped("HostSystem"));
+		assertEquals("check datastores",1,index.getEntries("Datastore").size());
+		assertEquals("check no skipped datastores",0,index.getSkipped("Datastore"));
+	}
+
+	@Test
+	public void testProperties() {
+		assertEquals("check virtual machine properties",5,InventoryIndex.getProperties("VirtualMachine").length);
+		assertEquals("check datastore properties",1,InventoryIndex.getProperties("Datastore").length);
+	}
+
+	@Test
+	public void testDuplicateNames() {
+		Map<ManagedObjectReference,Map<String,Object>> properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		properties.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		properties.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","web"));
+
+		properties.put(mor("VirtualMachine","vm-3"),ImmutableMap.<String,Object>of("name","db"));
+		properties.put(mor("Datastore","datastore-1"),ImmutableMap.<String,Object>of("name","web"));
+
+		List<String> types = ImmutableList.of("VirtualMachine","Datastore");
+		InventoryIndex index = InventoryIndex.of("vcenter",types,properties,null);
+		assertEquals("check both virtual machines",3,index.getEntries("VirtualMachine").size());
+		assertEquals("check first source","vcenter-web-vm-1",index.getEntries("VirtualMachine").get("vm-1").getSource());
+		assertEquals("check second source","vcenter-web-vm-2",index.getEntries("VirtualMachine").get("vm-2").getSource());
+		assertEquals("check unique name","vcenter-db",index.getEntries("VirtualMachine").get("vm-3").getSource());
+		assertEquals("check other type","vcenter-web",index.getEntries("Datastore").get("datastore-1").getSource());
+
+		// The qualified source is kept once the other managed object is gone
+		Map<ManagedObjectReference,Map<String,Object>> removed = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		removed.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		InventoryIndex next = InventoryIndex.of("vcenter",types,removed,index);
+		assertEquals("check source kept","vcenter-web-vm-1",next.getEntries("VirtualMachine").get("vm-1").getSource());
+	}
+
+	@Test
+	public void testOnlyNewcomersQualified() {
+		List<String> types = ImmutableList.of("VirtualMachine");
+		Map<ManagedObjectReference,Map<String,Object>> properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		properties.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		InventoryIndex previous = InventoryIndex.of("vcenter",types,properties,null);
+
+		// Managed object references do not implement equals, each walk returns new instances
+		properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		properties.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		properties.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","web"));
+		InventoryIndex index = InventoryIndex.of("vcenter",types,properties,previous);
+		assertEquals("check existing source kept","vcenter-web",index.getEntries("VirtualMachine").get("vm-1").getSource());
+		assertEquals("check newcomer qualified","vcenter-web-vm-2",index.getEntries("VirtualMachine").get("vm-2").getSource());
+
+		// A renamed managed object is new to its name
+		properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		properties.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","db"));
+		properties.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","web"));
+		properties.put(mor("VirtualMachine","vm-3"),ImmutableMap.<String,Object>of("name","db"));
+		InventoryIndex renamed = InventoryIndex.of("vcenter",types,properties,index);
+		assertEquals("check renamed qualified","vcenter-db-vm-1",renamed.getEntries("VirtualMachine").get("vm-1").getSource());
+		assertEquals("check qualified source kept","vcenter-web-vm-2",renamed.getEntries("VirtualMachine").get("vm-2").getSource());
+	}
+
+	@Test
+	public void testQualifiedSourceKeptOnMigration() {
+		List<String> types = ImmutableList.of("VirtualMachine");
+		Map<ManagedObjectReference,Map<String,Object>> properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		properties.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web",
+				InventoryIndex.HOST_PROPERTY,mor("HostSystem","host-1")));
+		properties.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","web",
+				InventoryIndex.HOST_PROPERTY,mor("HostSystem","host-1")));
+		InventoryIndex previous = InventoryIndex.of("vcenter",types,properties,null);
+
+		properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		properties.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web",
+				InventoryIndex.HOST_PROPERTY,mor("HostSystem","host-2")));
+		properties.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","web",
+				InventoryIndex.HOST_PROPERTY,mor("HostSystem","host-1")));
+		InventoryIndex index = InventoryIndex.of("vcenter",types,properties,previous);
+		InventoryEntry migrated = index.getEntries("VirtualMachine").get("vm-1");
+		assertEquals("check migrated","host-2",migrated.getHost());
+		assertEquals("check source kept","vcenter-web-vm-1",migrated.getSource());
+		assertSame("check other entry reused",previous.getEntries("VirtualMachine").get("vm-2"),
+				index.getEntries("VirtualMachine").get("vm-2"));
+	}
+
+	@Test
+	public void testDuplicateNamesAcrossPages() {
+		Map<ManagedObjectReference,Map<String,Object>> first = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		first.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		Map<ManagedObjectReference,Map<String,Object>> second = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		second.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","web"));
+
+		List<String> types = ImmutableList.of("VirtualMachine");
+		InventoryIndex.Builder builder = new InventoryIndex.Builder("vcenter",types,null);
+		InventoryIndex firstPage = builder.add(first);
+		InventoryIndex secondPage = builder.add(second);
+		// The queries of each page are submitted with the sources of the page
+		assertEquals("check first page source","vcenter-web",firstPage.getEntries("VirtualMachine").get("vm-1").getSource());
+		assertEquals("check second page source","vcenter-web-vm-2",secondPage.getEntries("VirtualMachine").get("vm-2").getSource());
+		InventoryIndex index = builder.build();
+		assertEquals("check first source","vcenter-web",index.getEntries("VirtualMachine").get("vm-1").getSource());
+		assertEquals("check second source","vcenter-web-vm-2",index.getEntries("VirtualMachine").get("vm-2").getSource());
+
+		// The next walk retrieves them in the other order, a managed object of the previous walk
+		// keeps its source even when another one with its name is retrieved first
+		first = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		first.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","web"));
+		first.put(mor("VirtualMachine","vm-3"),ImmutableMap.<String,Object>of("name","web"));
+		second = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		second.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		builder = new InventoryIndex.Builder("vcenter",types,index);
+		firstPage = builder.add(first);
+		secondPage = builder.add(second);
+		assertEquals("check qualified source kept","vcenter-web-vm-2",firstPage.getEntries("VirtualMachine").get("vm-2").getSource());
+		assertEquals("check newcomer qualified","vcenter-web-vm-3",firstPage.getEntries("VirtualMachine").get("vm-3").getSource());
+		assertEquals("check source kept","vcenter-web",secondPage.getEntries("VirtualMachine").get("vm-1").getSource());
+	}
+
+	@Test
+	public void testReuseEntries() {
+		Map<ManagedObjectReference,Map<String,Object>> properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		properties.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		properties.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","db"));
+		InventoryIndex previous = InventoryIndex.of("vcenter",ImmutableList.of("VirtualMachine"),properties,null);
+
+		// Managed object references do not implement equals, the next walk returns new instances
+		Map<ManagedObjectReference,Map<String,Object>> renamed = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		renamed.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		renamed.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","database"));
+		InventoryIndex index = InventoryIndex.of("vcenter",ImmutableList.of("VirtualMachine"),renamed,previous);
+		assertSame("check unchanged entry reused",previous.getEntries("VirtualMachine").get("vm-1"),
+				index.getEntries("VirtualMachine").get("vm-1"));
+		assertEquals("check renamed source","vcenter-database",index.getEntries("VirtualMachine").get("vm-2").getSource());
+	}
+
+	@Test
+	public void testMerge() {
+		Map<ManagedObjectReference,Map<String,Object>> first = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		first.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		first.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","db",
+				InventoryIndex.POWER_STATE_PROPERTY,VirtualMachinePowerState.SUSPENDED));
+		Map<ManagedObjectReference,Map<String,Object>> second = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		second.put(mor("VirtualMachine","vm-3"),ImmutableMap.<String,Object>of("name","app"));
+		second.put(mor("HostSystem","host-1"),ImmutableMap.<String,Object>of("name","esx1"));
+
+		List<String> types = ImmutableList.of("VirtualMachine","HostSystem");
+		InventoryIndex.Builder builder = new InventoryIndex.Builder("vcenter",types,null);
+		builder.add(first);
+		builder.add(second);
+		InventoryIndex index = builder.build();
+		assertEquals("check size",3,index.size());
+		assertEquals("check virtual machines",2,index.getEntries("VirtualMachine").size());
+		assertEquals("check skipped",1,index.getSkipped("VirtualMachine"));
+		assertEquals("check hosts",1,index.getEntries("HostSystem").size());
+	}
+
+	@Test
+	public void testHost() {
+		Map<ManagedObjectReference,Map<String,Object>> properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		properties.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web",
+				InventoryIndex.HOST_PROPERTY,mor("HostSystem","host-1")));
+		List<String> types = ImmutableList.of("VirtualMachine");
+		InventoryIndex previous = InventoryIndex.of("vcenter",types,properties,null);
+		assertEquals("check host","host-1",previous.getEntries("VirtualMachine").get("vm-1").getHost());
+
+		Map<ManagedObjectReference,Map<String,Object>> migrated = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		migrated.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web",
+				InventoryIndex.HOST_PROPERTY,mor("HostSystem","host-2")));
+		InventoryIndex index = InventoryIndex.of("vcenter",types,migrated,previous);
+		assertEquals("check migrated","host-2",index.getEntries("VirtualMachine").get("vm-1").getHost());
+	}
+
+	@Test
+	public void testBuilder() {
+		List<String> types = ImmutableList.of("VirtualMachine");
+		InventoryIndex.Builder builder = new InventoryIndex.Builder("vcenter",types,null);
+		for (int i = 0; i < 3; i++) {
+			Map<ManagedObjectReference,Map<String,Object>> page = new HashMap<ManagedObjectReference,Map<String,Object>>();
+			page.put(mor("VirtualMachine","vm-" + i),ImmutableMap.<String,Object>of("name","vm" + i));
+			builder.add(page);
+		}
+		assertEquals("check pages",3,builder.getPages());
+		InventoryIndex index = builder.build();
+		assertEquals("check size",3,index.size());
+		assertEquals("check source","vcenter-vm2",index.getEntries("VirtualMachine").get("vm-2").getSource());
+	}
+}
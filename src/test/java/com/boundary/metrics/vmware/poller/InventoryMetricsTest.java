@@ -0,0 +1,103 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static com.boundary.metrics.vmware.VMWareTestUtils.mor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.VirtualMachinePowerState;
+
+public class InventoryMetricsTest {
+
+	private static final String PREFIX = "com.boundary.metrics.vmware.poller.VMWareMetricCollector.";
+
+	private static long getCount(Map<String,Metric> metrics,String name) {
+		return ((Histogram) metrics.get(PREFIX + name + ".vcenter")).getSnapshot().getMax();
+	}
+
+	@Test
+	public void testChanges() {
+		InventoryMetrics inventoryMetrics = new InventoryMetrics(VMWareMetricCollector.class,"vcenter",null);
+		List<String> types = ImmutableList.of("VirtualMachine","HostSystem");
+
+		Map<ManagedObjectReference,Map<String,Object>> first = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		first.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		first.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","db"));
+		first.put(mor("HostSystem","host-1"),ImmutableMap.<String,Object>of("name","esx1"));
+		inventoryMetrics.recordPage(first);
+		InventoryIndex previous = InventoryIndex.of("vcenter",types,first,null);
+		inventoryMetrics.recordInventory(null,previous);
+
+		Map<ManagedObjectReference,Map<String,Object>> second = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		second.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","frontend"));
+		second.put(mor("VirtualMachine","vm-3"),ImmutableMap.<String,Object>of("name","app"));
+		second.put(mor("VirtualMachine","vm-4"),ImmutableMap.<String,Object>of("name","cache"));
+		second.put(mor("HostSystem","host-1"),ImmutableMap.<String,Object>of("name","esx1"));
+		inventoryMetrics.recordPage(second);
+		inventoryMetrics.recordInventory(previous,InventoryIndex.of("vcenter",types,second,previous));
+
+		Map<String,Metric> metrics = inventoryMetrics.getMetrics();
+		assertEquals("check added",2,getCount(metrics,"inventory-added"));
+		assertEquals("check removed",1,getCount(metrics,"inventory-removed"));
+		assertEquals("check renamed",1,getCount(metrics,"inventory-renamed"));
+		assertEquals("check first cycle not counted",1,((Histogram) metrics.get(PREFIX + "inventory-added.vcenter")).getCount());
+		assertEquals("check pages",2,((Meter) metrics.get(PREFIX + "inventory-page-meter.vcenter")).getCount());
+		assertTrue("check bytes",((Meter) metrics.get(PREFIX + "inventory-estimated-bytes-meter.vcenter")).getCount() > 0);
+
+		@SuppressWarnings("unchecked")
+		Map<String,Integer> objects = ((Gauge<Map<String,Integer>>) metrics.get(PREFIX + "inventory-objects.vcenter")).getValue();
+		assertEquals("check virtual machines",3,objects.get("VirtualMachine").intValue());
+		assertEquals("check hosts",1,objects.get("HostSystem").intValue());
+	}
+
+	@Test
+	public void testPoweredOffNotRemoved() {
+		InventoryMetrics inventoryMetrics = new InventoryMetrics(VMWareMetricCollector.class,"vcenter",null);
+		List<String> types = ImmutableList.of("VirtualMachine");
+
+		Map<ManagedObjectReference,Map<String,Object>> first = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		first.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web"));
+		first.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","db",
+				InventoryIndex.POWER_STATE_PROPERTY,VirtualMachinePowerState.POWERED_OFF));
+		InventoryIndex previous = InventoryIndex.of("vcenter",types,first,null);
+
+		// web is powered off and db powered on, neither is added nor removed
+		Map<ManagedObjectReference,Map<String,Object>> second = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		second.put(mor("VirtualMachine","vm-1"),ImmutableMap.<String,Object>of("name","web",
+				InventoryIndex.POWER_STATE_PROPERTY,VirtualMachinePowerState.POWERED_OFF));
+		second.put(mor("VirtualMachine","vm-2"),ImmutableMap.<String,Object>of("name","db"));
+		second.put(mor("VirtualMachine","vm-3"),ImmutableMap.<String,Object>of("name","app",
+				InventoryIndex.POWER_STATE_PROPERTY,VirtualMachinePowerState.POWERED_OFF));
+		inventoryMetrics.recordInventory(previous,InventoryIndex.of("vcenter",types,second,previous));
+
+		Map<String,Metric> metrics = inventoryMetrics.getMetrics();
+		assertEquals("check powered off virtual machine added",1,getCount(metrics,"inventory-added"));
+		assertEquals("check none removed",0,getCount(metrics,"inventory-removed"));
+	}
+}
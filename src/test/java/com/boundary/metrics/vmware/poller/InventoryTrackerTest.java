@@ -0,0 +1,124 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.ObjectUpdateKind;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyChangeOp;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.UpdateSet;
+import com.vmware.vim25.VirtualMachinePowerState;
+
+public class InventoryTrackerTest {
+
+	private InventoryTracker tracker;
+
+	@Before
+	public void setUp() {
+		VMwareClient client = new VMwareClient(URI.create("https://localhost/sdk"),"user","password","test");
+		tracker = new InventoryTracker(client,ImmutableList.of("VirtualMachine","HostSystem"),ImmutableList.<String>of());
+	}
+
+	private static ObjectUpdate update(ObjectUpdateKind kind,String type,String value,String name) {
+		ManagedObjectReference mor = new ManagedObjectReference();
+		mor.setType(type);
+		mor.setValue(value);
+		ObjectUpdate update = new ObjectUpdate();
+		update.setKind(kind);
+		update.setObj(mor);
+		if (name != null) {
+			PropertyChange change = new PropertyChange();
+			change.setName("name");
+			change.setOp(PropertyChangeOp.ASSIGN);
+			change.setVal(name);
+			update.getChangeSet().add(change);
+		}
+		return update;
+	}
+
+	private static UpdateSet updateSet(boolean truncated,ObjectUpdate... updates) {
+		PropertyFilterUpdate filterUpdate = new PropertyFilterUpdate();
+		filterUpdate.getObjectSet().addAll(ImmutableList.copyOf(updates));
+		UpdateSet updateSet = new UpdateSet();
+		updateSet.getFilterSet().add(filterUpdate);
+		updateSet.setTruncated(truncated);
+		return updateSet;
+	}
+
+	@Test
+	public void testSnapshot() {
+		assertNull("check no index",tracker.getInventory());
+
+		tracker.apply(updateSet(true,update(ObjectUpdateKind.ENTER,"VirtualMachine","vm-1","web")));
+		assertNull("check truncated not published",tracker.getInventory());
+
+		tracker.apply(updateSet(false,update(ObjectUpdateKind.ENTER,"VirtualMachine","vm-2","db")));
+		InventoryIndex index = tracker.getInventory();
+		assertEquals("check virtual machines",2,index.getEntries("VirtualMachine").size());
+		assertEquals("check vm-1","web",index.getEntries("VirtualMachine").get("vm-1").getName());
+		assertTrue("check no hosts",index.getEntries("HostSystem").isEmpty());
+		assertTrue("check hosts tracked",index.contains("HostSystem"));
+		assertFalse("check untracked type",index.contains("Datastore"));
+	}
+
+	@Test
+	public void testChanges() {
+		tracker.apply(updateSet(false,
+				update(ObjectUpdateKind.ENTER,"VirtualMachine","vm-1","web"),
+				update(ObjectUpdateKind.ENTER,"VirtualMachine","vm-2","db"),
+				update(ObjectUpdateKind.ENTER,"HostSystem","host-1","esx1")));
+
+		tracker.apply(updateSet(false,
+				update(ObjectUpdateKind.MODIFY,"VirtualMachine","vm-1","frontend"),
+				update(ObjectUpdateKind.LEAVE,"VirtualMachine","vm-2",null)));
+		InventoryIndex index = tracker.getInventory();
+		assertEquals("check virtual machines",1,index.getEntries("VirtualMachine").size());
+		assertEquals("check renamed","test-frontend",index.getEntries("VirtualMachine").get("vm-1").getSource());
+		assertEquals("check hosts unchanged",1,index.getEntries("HostSystem").size());
+	}
+
+	@Test
+	public void testPowerState() {
+		tracker.apply(updateSet(false,
+				update(ObjectUpdateKind.ENTER,"VirtualMachine","vm-1","web"),
+				update(ObjectUpdateKind.ENTER,"VirtualMachine","vm-2","db")));
+
+		ObjectUpdate powerOff = update(ObjectUpdateKind.MODIFY,"VirtualMachine","vm-1",null);
+		PropertyChange change = new PropertyChange();
+		change.setName(InventoryIndex.POWER_STATE_PROPERTY);
+		change.setOp(PropertyChangeOp.ASSIGN);
+		change.setVal(VirtualMachinePowerState.POWERED_OFF);
+		powerOff.getChangeSet().add(change);
+		tracker.apply(updateSet(false,powerOff));
+
+		InventoryIndex index = tracker.getInventory();
+		assertEquals("check running",1,index.getEntries("VirtualMachine").size());
+		assertEquals("check vm-2","db",index.getEntries("VirtualMachine").get("vm-2").getName());
+		assertEquals("check skipped",1,index.getSkipped("VirtualMachine"));
+	}
+}
@@ -16,8 +16,10 @@ package com.boundary.metrics.vmware.poller;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -65,6 +67,24 @@ public class MORCatalogFactoryTest {
 		assertEquals("check PerformanceCounterEntry.get","cpu.usage.AVERAGE",performanceCounterEntry.getName());
 	}
 	
+	@Test
+	public void testLanes() {
+		MORCatalog inventory = MORCatalogFactory.create(TEST_CATALOG_FILE);
+		List<MORCatalogEntry> catalog = inventory.getCatalog();
+
+		assertNull("check VirtualMachine lane",catalog.get(0).getLane());
+		assertEquals("check Datastore lane",CollectionLane.historical,catalog.get(2).getLane());
+	}
+	
+	@Test
+	public void testInventoryPaths() {
+		MORCatalog inventory = MORCatalogFactory.create(TEST_CATALOG_FILE);
+		List<MORCatalogEntry> catalog = inventory.getCatalog();
+
+		assertNull("check VirtualMachine inventory paths",catalog.get(0).getInventoryPaths());
+		assertEquals("check Datastore inventory paths",Arrays.asList("Datacenter/datastore"),catalog.get(2).getInventoryPaths());
+	}
+	
 	@Test
 	public void testDefinitions() {
 		MORCatalog inventory = MORCatalogFactory.create(TEST_CATALOG_FILE);
@@ -0,0 +1,49 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static org.junit.Assert.assertEquals;
+import io.dropwizard.jackson.Jackson;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class MonitoredEntityTest {
+
+	private static MonitoredEntity entity(String inventoryPaths) throws Exception {
+		return Jackson.newObjectMapper().readValue("{\"uri\":\"https://vcenter.example.com/sdk\",\"username\":\"user\","
+				+ "\"password\":\"password\",\"name\":\"vcenter\",\"catalog\":\"catalog.json\","
+				+ "\"inventoryPaths\":" + inventoryPaths + "}",MonitoredEntity.class);
+	}
+
+	@Test
+	public void testHostInventoryPaths() throws Exception {
+		MonitoredEntity entity = entity("[\"Datacenter/vm/Web\",\"Datacenter/host/Cluster\",\"Datacenter/datastore\",\"Other/host/Cluster\"]");
+		assertEquals("check host paths",ImmutableList.of("Datacenter/host","Other/host/Cluster"),entity.getHostInventoryPaths());
+	}
+
+	@Test
+	public void testHostInventoryPath() {
+		assertEquals("check vm folder","Datacenter/host",MonitoredEntity.getHostInventoryPath("Datacenter/vm/Folder/Web"));
+		assertEquals("check cluster","Datacenter/host/Cluster",MonitoredEntity.getHostInventoryPath("Datacenter/host/Cluster"));
+		assertEquals("check datacenter","Datacenter",MonitoredEntity.getHostInventoryPath("Datacenter"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testInventoryPathsImmutable() throws Exception {
+		entity("[\"Datacenter/vm/Web\"]").getInventoryPaths().add("Datacenter/host");
+	}
+}
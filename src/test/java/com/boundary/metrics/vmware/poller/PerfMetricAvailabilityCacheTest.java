@@ -0,0 +1,121 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static com.boundary.metrics.vmware.VMWareTestUtils.mor;
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.PerfMetricId;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+
+public class PerfMetricAvailabilityCacheTest {
+	
+	/**
+	 * Client that reports counters 100 and 102 as available without connecting to an end point
+	 */
+	private static class AvailabilityClient extends VMwareClient {
+		
+		private int queries = 0;
+
+		public AvailabilityClient() {
+			super(URI.create("https://localhost/sdk"),"user","password","test");
+		}
+
+		@Override
+		public List<PerfMetricId> getAvailablePerfMetrics(ManagedObjectReference mor,Integer intervalId) throws RuntimeFaultFaultMsg {
+			queries++;
+			return ImmutableList.of(metricId(100,""),metricId(102,"vmnic0"));
+		}
+	}
+	
+	private AvailabilityClient client;
+	
+	private static PerfMetricId metricId(int counterId,String instance) {
+		PerfMetricId id = new PerfMetricId();
+		id.setCounterId(counterId);
+		id.setInstance(instance);
+		return id;
+	}
+	
+	@Before
+	public void setUp() throws Exception {
+		client = new AvailabilityClient();
+	}
+
+	@Test
+	public void testPrune() {
+		PerfMetricAvailabilityCache cache = new PerfMetricAvailabilityCache("localhost",PerfMetricAvailabilityCache.Scope.entity,10,60000);
+		List<PerfMetricId> requested = ImmutableList.of(metricId(100,"*"),metricId(101,"*"),metricId(102,"*"));
+		
+		List<PerfMetricId> pruned = cache.prune(client,mor("VirtualMachine","vm-1"),20,requested);
+		assertEquals("check pruned size",2,pruned.size());
+		assertEquals("check first counter",100,pruned.get(0).getCounterId());
+		assertEquals("check second counter",102,pruned.get(1).getCounterId());
+	}
+
+	@Test
+	public void testPruneInstances() {
+		PerfMetricAvailabilityCache cache = new PerfMetricAvailabilityCache("localhost",PerfMetricAvailabilityCache.Scope.entity,10,60000);
+		List<PerfMetricId> requested = ImmutableList.of(metricId(100,"*"),metricId(102,"*"));
+		
+		List<PerfMetricId> pruned = cache.prune(client,mor("VirtualMachine","vm-1"),20,requested,InstanceFilter.of("vmnic.*"));
+		assertEquals("check pruned size",1,pruned.size());
+		assertEquals("check counter",102,pruned.get(0).getCounterId());
+		assertEquals("check instance","vmnic0",pruned.get(0).getInstance());
+	}
+
+	@Test
+	public void testEntityScope() {
+		PerfMetricAvailabilityCache cache = new PerfMetricAvailabilityCache("localhost",PerfMetricAvailabilityCache.Scope.entity,10,60000);
+		List<PerfMetricId> requested = ImmutableList.of(metricId(100,"*"));
+		
+		cache.prune(client,mor("VirtualMachine","vm-1"),20,requested);
+		cache.prune(client,mor("VirtualMachine","vm-1"),20,requested);
+		cache.prune(client,mor("VirtualMachine","vm-2"),20,requested);
+		assertEquals("check queries",2,client.queries);
+	}
+
+	@Test
+	public void testCallingClient() {
+		PerfMetricAvailabilityCache cache = new PerfMetricAvailabilityCache("localhost",PerfMetricAvailabilityCache.Scope.entity,10,60000);
+		AvailabilityClient other = new AvailabilityClient();
+		List<PerfMetricId> requested = ImmutableList.of(metricId(100,"*"));
+		
+		cache.prune(client,mor("VirtualMachine","vm-1"),20,requested);
+		cache.prune(other,mor("VirtualMachine","vm-2"),300,requested);
+		cache.prune(other,mor("VirtualMachine","vm-1"),20,requested);
+		assertEquals("check queries of first client",1,client.queries);
+		assertEquals("check queries of second client",1,other.queries);
+	}
+
+	@Test
+	public void testTypeScope() {
+		PerfMetricAvailabilityCache cache = new PerfMetricAvailabilityCache("localhost",PerfMetricAvailabilityCache.Scope.type,10,60000);
+		List<PerfMetricId> requested = ImmutableList.of(metricId(100,"*"));
+		
+		cache.prune(client,mor("VirtualMachine","vm-1"),20,requested);
+		cache.prune(client,mor("VirtualMachine","vm-2"),20,requested);
+		cache.prune(client,mor("HostSystem","host-1"),20,requested);
+		assertEquals("check queries",2,client.queries);
+	}
+}
@@ -0,0 +1,79 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+public class PerformanceCSVParserTest {
+
+	@Test
+	public void testParseValues() {
+		assertArrayEquals("check values",new long[] {120,-1,315},PerformanceCSVParser.parseValues("120,-1,315"));
+	}
+
+	@Test
+	public void testParseSingleValue() {
+		assertArrayEquals("check single value",new long[] {9876543210L},PerformanceCSVParser.parseValues("9876543210"));
+	}
+
+	@Test
+	public void testParseEmptyValues() {
+		assertEquals("check empty",0,PerformanceCSVParser.parseValues("").length);
+		assertEquals("check null",0,PerformanceCSVParser.parseValues(null).length);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testParseBadValues() {
+		PerformanceCSVParser.parseValues("12,x4");
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testParseEmptyField() {
+		PerformanceCSVParser.parseValues("12,,4");
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testParseTrailingComma() {
+		PerformanceCSVParser.parseValues("12,4,");
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testParseSignOnly() {
+		PerformanceCSVParser.parseValues("12,-");
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testParseInnerSign() {
+		PerformanceCSVParser.parseValues("12,4-5");
+	}
+
+	@Test
+	public void testParseTimestamps() {
+		long[] timestamps = PerformanceCSVParser.parseTimestamps("20,2014-10-01T12:00:20Z,20,2014-10-01T12:00:40Z");
+		assertEquals("check size",2,timestamps.length);
+		assertEquals("check first",new DateTime(2014,10,1,12,0,20,DateTimeZone.UTC).getMillis(),timestamps[0]);
+		assertEquals("check second",new DateTime(2014,10,1,12,0,40,DateTimeZone.UTC).getMillis(),timestamps[1]);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testParseUnpairedTimestamps() {
+		PerformanceCSVParser.parseTimestamps("20,2014-10-01T12:00:20Z,20");
+	}
+}
@@ -15,11 +15,17 @@
 package com.boundary.metrics.vmware.poller;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -121,4 +127,48 @@ public class PerformanceCounterMetadataTest {
 		
 	}
 
+	@Test
+	public void testMetricIdsNotShared() {
+		Map<String,MetricDefinition> cpu = new HashMap<String,MetricDefinition>();
+		cpu.put("cpu.usage.AVERAGE",new MetricDefinitionBuilder().setMetric("CPU").build());
+		Map<String,MetricDefinition> mem = new HashMap<String,MetricDefinition>();
+		mem.put("mem.swapused.MAXIMUM",new MetricDefinitionBuilder().setMetric("MEM").build());
+
+		List<PerfMetricId> first = metadata.getPerformanceMetricIds(cpu,"");
+		List<PerfMetricId> second = metadata.getPerformanceMetricIds(mem,"*");
+		assertNotSame("check results not shared",first,second);
+		assertEquals("check first counter",100,first.get(0).getCounterId());
+		assertEquals("check first instance","",first.get(0).getInstance());
+		assertEquals("check second counter",101,second.get(0).getCounterId());
+	}
+
+	@Test
+	public void testConcurrentMetricIds() throws Exception {
+		final Map<String,MetricDefinition> cpu = new HashMap<String,MetricDefinition>();
+		cpu.put("cpu.usage.AVERAGE",new MetricDefinitionBuilder().setMetric("CPU").build());
+		final Map<String,MetricDefinition> disk = new HashMap<String,MetricDefinition>();
+		disk.put("disk.write.AVERAGE",new MetricDefinitionBuilder().setMetric("DISK").build());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < 400; i++) {
+				final boolean even = i % 2 == 0;
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						List<PerfMetricId> ids = metadata.getPerformanceMetricIds(even ? cpu : disk,even ? "" : "*");
+						return ids.size() == 1 && ids.get(0).getCounterId() == (even ? 100 : 102)
+								&& ids.get(0).getInstance().equals(even ? "" : "*");
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				assertTrue("check metric ids of the caller",result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 }
@@ -0,0 +1,63 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.boundary.metrics.vmware.VMWareTestUtils;
+import com.google.common.collect.ImmutableList;
+import com.vmware.vim25.PerfCounterInfo;
+import com.vmware.vim25.PerfStatsType;
+import com.vmware.vim25.PerfSummaryType;
+
+public class PerformanceCounterRegistryTest {
+
+	private final PerfCounterInfo cpu = VMWareTestUtils.buildPerfCounterInfo("cpu",2,new Integer(4),"usage",PerfSummaryType.AVERAGE,PerfStatsType.ABSOLUTE);
+	private final PerfCounterInfo mem = VMWareTestUtils.buildPerfCounterInfo("mem",24,new Integer(4),"usage",PerfSummaryType.AVERAGE,PerfStatsType.ABSOLUTE);
+	private final PerfCounterInfo sparse = VMWareTestUtils.buildPerfCounterInfo("vsan",PerformanceCounterRegistry.MAX_DENSE_ID + 10,new Integer(1),"iops",PerfSummaryType.AVERAGE,PerfStatsType.RATE);
+
+	@Test
+	public void testLookup() {
+		PerformanceCounterRegistry registry = PerformanceCounterRegistry.of(ImmutableList.of(cpu,mem,sparse));
+
+		assertEquals("check size",3,registry.size());
+		assertSame("check cpu info",cpu,registry.getInfo(2));
+		assertSame("check mem info",mem,registry.getInfo(24));
+		assertSame("check sparse info",sparse,registry.getInfo(PerformanceCounterRegistry.MAX_DENSE_ID + 10));
+		assertNull("check missing info",registry.getInfo(3));
+		assertNull("check negative info",registry.getInfo(-1));
+		assertNull("check out of range info",registry.getInfo(1000));
+		assertEquals("check cpu id",2,registry.getId("cpu.usage.AVERAGE").intValue());
+		assertNull("check missing id",registry.getId("cpu.usage.MAXIMUM"));
+	}
+
+	@Test
+	public void testFrozen() {
+		PerformanceCounterMetadata metadata = new PerformanceCounterMetadata();
+		metadata.put(cpu);
+
+		PerformanceCounterRegistry registry = metadata.getRegistry();
+		assertSame("check registry reused",registry,metadata.getRegistry());
+		assertSame("check info map reused",metadata.getInfoMap(),metadata.getInfoMap());
+
+		metadata.put(mem);
+		assertEquals("check registry rebuilt",2,metadata.getRegistry().size());
+		assertEquals("check previous registry unchanged",1,registry.size());
+	}
+}
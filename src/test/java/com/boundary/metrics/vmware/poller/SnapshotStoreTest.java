@@ -0,0 +1,123 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.vmware.vim25.ElementDescription;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.PerfCounterInfo;
+import com.vmware.vim25.PerfStatsType;
+import com.vmware.vim25.PerfSummaryType;
+
+public class SnapshotStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ElementDescription description(String key) {
+		ElementDescription description = new ElementDescription();
+		description.setKey(key);
+		return description;
+	}
+
+	private static PerfCounterInfo counter(int key,String group,String name,PerfSummaryType rollup,String unit) {
+		PerfCounterInfo info = new PerfCounterInfo();
+		info.setKey(key);
+		info.setGroupInfo(description(group));
+		info.setNameInfo(description(name));
+		info.setRollupType(rollup);
+		info.setStatsType(PerfStatsType.RATE);
+		info.setUnitInfo(description(unit));
+		return info;
+	}
+
+	@Test
+	public void testMissingSnapshot() {
+		SnapshotStore store = new SnapshotStore(folder.getRoot());
+		assertNull("check missing snapshot",store.load("uuid"));
+	}
+
+	@Test
+	public void testRoundTrip() {
+		PerformanceCounterMetadata counters = new PerformanceCounterMetadata();
+		counters.put(counter(2,"cpu","usage",PerfSummaryType.AVERAGE,"percent"));
+		counters.put(counter(125,"mem","consumed",PerfSummaryType.MAXIMUM,"kiloBytes"));
+
+		ManagedObjectReference vm = new ManagedObjectReference();
+		vm.setType("VirtualMachine");
+		vm.setValue("vm-1");
+		Map<ManagedObjectReference,Map<String,Object>> properties = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		properties.put(vm,ImmutableMap.<String,Object>of("name","web"));
+		InventoryIndex inventory = InventoryIndex.of("vcenter",ImmutableList.of("VirtualMachine","HostSystem"),properties,null);
+
+		SnapshotStore store = new SnapshotStore(folder.getRoot());
+		store.save("uuid",EndpointSnapshot.of("uuid",counters,CollectionLane.realtime,inventory));
+
+		EndpointSnapshot snapshot = new SnapshotStore(folder.getRoot()).load("uuid");
+		assertEquals("check instance uuid","uuid",snapshot.getInstanceUuid());
+
+		PerformanceCounterMetadata loaded = snapshot.getCounterMetadata();
+		assertEquals("check counter names",counters.getNameMap(),loaded.getNameMap());
+		assertEquals("check unit","kiloBytes",loaded.getInfoMap().get(125).getUnitInfo().getKey());
+
+		InventoryIndex loadedInventory = snapshot.getInventory(CollectionLane.realtime,"vcenter");
+		assertEquals("check managed objects",1,loadedInventory.size());
+		assertEquals("check source","vcenter-web",loadedInventory.getEntries("VirtualMachine").get("vm-1").getSource());
+		assertEquals("check empty type",0,loadedInventory.getEntries("HostSystem").size());
+	}
+
+	@Test
+	public void testLanes() {
+		PerformanceCounterMetadata counters = new PerformanceCounterMetadata();
+		counters.put(counter(2,"cpu","usage",PerfSummaryType.AVERAGE,"percent"));
+
+		ManagedObjectReference vm = new ManagedObjectReference();
+		vm.setType("VirtualMachine");
+		vm.setValue("vm-1");
+		Map<ManagedObjectReference,Map<String,Object>> vms = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		vms.put(vm,ImmutableMap.<String,Object>of("name","web"));
+		ManagedObjectReference datastore = new ManagedObjectReference();
+		datastore.setType("Datastore");
+		datastore.setValue("datastore-1");
+		Map<ManagedObjectReference,Map<String,Object>> datastores = new HashMap<ManagedObjectReference,Map<String,Object>>();
+		datastores.put(datastore,ImmutableMap.<String,Object>of("name","san"));
+
+		SnapshotStore store = new SnapshotStore(folder.getRoot());
+		store.save("uuid",EndpointSnapshot.of("uuid",counters,CollectionLane.realtime,
+				InventoryIndex.of("vcenter",ImmutableList.of("VirtualMachine"),vms,null)));
+		store.save("uuid",EndpointSnapshot.of("uuid",counters,CollectionLane.historical,
+				InventoryIndex.of("vcenter",ImmutableList.of("Datastore"),datastores,null)));
+		// A lane whose inventory is not known yet keeps the one saved before the restart
+		new SnapshotStore(folder.getRoot()).save("uuid",EndpointSnapshot.of("uuid",counters,CollectionLane.realtime,null));
+
+		EndpointSnapshot snapshot = new SnapshotStore(folder.getRoot()).load("uuid");
+		assertEquals("check counters held once",1,snapshot.getCounterMetadata().getInfoMap().size());
+		assertEquals("check realtime inventory","vcenter-web",snapshot.getInventory(CollectionLane.realtime,"vcenter")
+				.getEntries("VirtualMachine").get("vm-1").getSource());
+		assertEquals("check historical inventory","vcenter-san",snapshot.getInventory(CollectionLane.historical,"vcenter")
+				.getEntries("Datastore").get("datastore-1").getSource());
+	}
+}
@@ -3,6 +3,7 @@ package com.boundary.metrics.vmware.poller;
 import static org.junit.Assert.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.After;
@@ -15,6 +16,7 @@ import com.boundary.metrics.vmware.VMWareTestUtils;
 import com.boundary.metrics.vmware.client.metrics.Metric;
 import com.vmware.vim25.ElementDescription;
 import com.vmware.vim25.PerfCounterInfo;
+import com.vmware.vim25.PerfMetricId;
 import com.vmware.vim25.PerfStatsType;
 import com.vmware.vim25.PerfSummaryType;
 
@@ -81,4 +83,58 @@ public class VMWareMetadataTest {
 		assertEquals("check two",two,infoMap.get(101));
 		assertEquals("check three",three,infoMap.get(102));
 	}
+
+	@Test
+	public void testPerfMetrics() {
+		PerformanceCounterMetadata metadata = new PerformanceCounterMetadata();
+		metadata.put(VMWareTestUtils.buildPerfCounterInfo("cpu",100,new Integer(4),"usage",PerfSummaryType.AVERAGE,PerfStatsType.ABSOLUTE));
+		metadata.put(VMWareTestUtils.buildPerfCounterInfo("mem",101,new Integer(4),"swapused",PerfSummaryType.MAXIMUM,PerfStatsType.ABSOLUTE));
+
+		Map<String,MetricDefinition> counters = new HashMap<String,MetricDefinition>();
+		counters.put("cpu.usage.AVERAGE",new MetricDefinitionBuilder().setMetric("SYSTEM_CPU_USAGE_AVERAGE").build());
+		Map<String,Map<String,MetricDefinition>> types = new HashMap<String,Map<String,MetricDefinition>>();
+		types.put("VirtualMachine",counters);
+		VMWareMetadata vmwMetadata = new VMWareMetadata(metadata,types);
+
+		List<PerfMetricId> ids = vmwMetadata.getPerfMetrics("VirtualMachine");
+		assertEquals("check metric ids",1,ids.size());
+		assertEquals("check counter id",100,ids.get(0).getCounterId());
+		assertEquals("check aggregate instance","",ids.get(0).getInstance());
+		assertSame("check metric ids shared",ids,vmwMetadata.getPerfMetrics("VirtualMachine"));
+		assertTrue("check other type",vmwMetadata.getPerfMetrics("HostSystem").isEmpty());
+	}
+
+	@Test
+	public void testDispatch() {
+		PerformanceCounterMetadata metadata = new PerformanceCounterMetadata();
+		PerfCounterInfo usage = VMWareTestUtils.buildPerfCounterInfo("cpu",2,new Integer(1),"usage",PerfSummaryType.AVERAGE,PerfStatsType.RATE);
+		usage.setUnitInfo(unit("percent"));
+		PerfCounterInfo consumed = VMWareTestUtils.buildPerfCounterInfo("mem",98,new Integer(1),"consumed",PerfSummaryType.AVERAGE,PerfStatsType.ABSOLUTE);
+		consumed.setUnitInfo(unit("kiloBytes"));
+		metadata.put(usage);
+		metadata.put(consumed);
+
+		Map<String,MetricDefinition> counters = new HashMap<String,MetricDefinition>();
+		counters.put("cpu.usage.AVERAGE",new MetricDefinitionBuilder().setMetric("SYSTEM_CPU_USAGE_AVERAGE").build());
+		counters.put("mem.consumed.AVERAGE",new MetricDefinitionBuilder().setMetric("SYSTEM_MEMORY_CONSUMED").build());
+		Map<String,Map<String,MetricDefinition>> types = new HashMap<String,Map<String,MetricDefinition>>();
+		types.put("HostSystem",counters);
+		VMWareMetadata vmwMetadata = new VMWareMetadata(metadata,types);
+
+		CounterDispatch cpu = vmwMetadata.getDispatch(2);
+		assertEquals("check cpu metric","SYSTEM_CPU_USAGE_AVERAGE",cpu.getMetricName());
+		assertEquals("check cpu full name","cpu.usage.AVERAGE",cpu.getFullName());
+		assertEquals("check cpu scale",0.1234,cpu.scale(1234).doubleValue(),0.0);
+		CounterDispatch mem = vmwMetadata.getDispatch(98);
+		assertEquals("check mem metric","SYSTEM_MEMORY_CONSUMED",mem.getMetricName());
+		assertEquals("check mem scale",2048L,mem.scale(2).longValue());
+		assertNull("check uncollected counter",vmwMetadata.getDispatch(3));
+		assertNull("check unknown counter",vmwMetadata.getDispatch(1000));
+	}
+
+	private static ElementDescription unit(String key) {
+		ElementDescription unit = new ElementDescription();
+		unit.setKey(key);
+		return unit;
+	}
 }
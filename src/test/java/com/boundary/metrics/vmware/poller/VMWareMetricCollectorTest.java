@@ -0,0 +1,376 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.boundary.metrics.vmware.poller;
+
+import static com.boundary.metrics.vmware.VMWareTestUtils.mor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.dropwizard.jackson.Jackson;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.boundary.metrics.vmware.VMWareTestUtils;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.vmware.vim25.PerfStatsType;
+import com.vmware.vim25.PerfSummaryType;
+import com.vmware.vim25.ManagedObjectNotFound;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.RuntimeFault;
+
+public class VMWareMetricCollectorTest {
+
+	private static final DateTime NOW = new DateTime(2014,10,1,12,0);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Collector whose performance counters are set by the test, fetches can be held until released
+	 */
+	private static class MetadataCollector extends VMWareMetricCollector {
+		private volatile PerformanceCounterMetadata counters = counters(100);
+		private final AtomicInteger fetches = new AtomicInteger();
+		private volatile CountDownLatch fetching;
+		private volatile CountDownLatch release;
+
+		MetadataCollector(MonitoredEntity configuration,ExecutorService executor) {
+			super(new VMwareClient(URI.create("https://vcenter.example.com/sdk"),"user","password","vcenter"),null,
+					configuration,executor,CollectionLane.realtime);
+		}
+
+		@Override
+		PerformanceCounterMetadata fetchPerformanceCounters() {
+			fetches.incrementAndGet();
+			if (release != null) {
+				fetching.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return counters;
+		}
+	}
+
+	private static PerformanceCounterMetadata counters(int key) {
+		PerformanceCounterMetadata counters = new PerformanceCounterMetadata();
+		counters.put(VMWareTestUtils.buildPerfCounterInfo("cpu",key,new Integer(4),"usage",PerfSummaryType.AVERAGE,PerfStatsType.RATE));
+		return counters;
+	}
+
+	private File catalog() throws Exception {
+		File catalog = folder.newFile("catalog.json");
+		Files.write(Resources.toString(Resources.getResource("test-catalog.json"),Charsets.UTF_8),catalog,Charsets.UTF_8);
+		return catalog;
+	}
+
+	private static MonitoredEntity entity(File catalog,String refreshInterval) throws Exception {
+		return entityWith(catalog,"\"metadataRefreshInterval\":\"" + refreshInterval + "\"");
+	}
+
+	private static MonitoredEntity entityWith(File catalog,String fields) throws Exception {
+		return Jackson.newObjectMapper().readValue("{\"uri\":\"https://vcenter.example.com/sdk\",\"username\":\"user\","
+				+ "\"password\":\"password\",\"name\":\"vcenter\",\"catalog\":\"" + catalog.getPath().replace("\\","\\\\")
+				+ "\"," + fields + "}",MonitoredEntity.class);
+	}
+
+	private static boolean hasType(MetricCollectionJob job,String type) {
+		for (MORCatalogEntry entry : job.getManagedObjectCatalog().getCatalog()) {
+			if (entry.getType().equals(type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collector recording the backfill windows it is asked to collect
+	 */
+	private static class BackfillCollector extends VMWareMetricCollector {
+		private final List<DateTime[]> windows = new ArrayList<DateTime[]>();
+
+		BackfillCollector() {
+			super(new VMwareClient(URI.create("https://vcenter.example.com/sdk"),"user","password","vcenter"),null,
+					new MonitoredEntity(URI.create("https://vcenter.example.com/sdk"),"user","password","vcenter","catalog.json"),
+					null,CollectionLane.realtime);
+		}
+
+		@Override
+		void collectBackfillWindow(DateTime start,DateTime end) {
+			windows.add(new DateTime[] {start,end});
+		}
+	}
+
+	@Test
+	public void testScheduleBackfillMerge() {
+		BackfillCollector collector = new BackfillCollector();
+		collector.scheduleBackfill(NOW.minusMinutes(30),NOW.minusMinutes(20),NOW);
+		collector.scheduleBackfill(NOW.minusMinutes(10),NOW.minusMinutes(5),NOW);
+		assertEquals("check start",NOW.minusMinutes(30),collector.getBackfillStart());
+		assertEquals("check end",NOW.minusMinutes(5),collector.getBackfillEnd());
+
+		collector.scheduleBackfill(NOW.minusMinutes(40),NOW.minusMinutes(35),NOW);
+		assertEquals("check earlier start",NOW.minusMinutes(40),collector.getBackfillStart());
+		assertEquals("check end kept",NOW.minusMinutes(5),collector.getBackfillEnd());
+	}
+
+	@Test
+	public void testScheduleBackfillCapped() {
+		BackfillCollector collector = new BackfillCollector();
+		collector.scheduleBackfill(NOW.minusHours(3),NOW.minusHours(2),NOW);
+		assertNull("check range older than maximum backfill",collector.getBackfillStart());
+
+		collector.scheduleBackfill(NOW.minusHours(2),NOW.minusMinutes(5),NOW);
+		assertEquals("check start capped",NOW.minusHours(1),collector.getBackfillStart());
+		assertEquals("check end",NOW.minusMinutes(5),collector.getBackfillEnd());
+	}
+
+	@Test
+	public void testBackfillChunks() throws Exception {
+		BackfillCollector collector = new BackfillCollector();
+		collector.scheduleBackfill(NOW.minusMinutes(25),NOW,NOW);
+
+		collector.backfill(NOW,System.nanoTime());
+		assertEquals("check chunks per poll",1,collector.windows.size());
+		assertEquals("check first chunk start",NOW.minusMinutes(25),collector.windows.get(0)[0]);
+		assertEquals("check first chunk end",NOW.minusMinutes(15),collector.windows.get(0)[1]);
+		assertEquals("check advanced",NOW.minusMinutes(15),collector.getBackfillStart());
+
+		collector.backfill(NOW,System.nanoTime());
+		collector.backfill(NOW,System.nanoTime());
+		assertEquals("check chunks",3,collector.windows.size());
+		assertEquals("check last chunk start",NOW.minusMinutes(5),collector.windows.get(2)[0]);
+		assertEquals("check last chunk end",NOW,collector.windows.get(2)[1]);
+		assertNull("check completed start",collector.getBackfillStart());
+		assertNull("check completed end",collector.getBackfillEnd());
+
+		collector.backfill(NOW,System.nanoTime());
+		assertEquals("check nothing pending",3,collector.windows.size());
+	}
+
+	@Test
+	public void testBackfillPurged() throws Exception {
+		BackfillCollector collector = new BackfillCollector();
+		collector.scheduleBackfill(NOW.minusMinutes(55),NOW,NOW);
+
+		// Half an hour later the start of the range is older than the maximum backfill
+		collector.backfill(NOW.plusMinutes(30),System.nanoTime());
+		assertEquals("check chunk start",NOW.minusMinutes(30),collector.windows.get(0)[0]);
+		assertEquals("check chunk end",NOW.minusMinutes(20),collector.windows.get(0)[1]);
+	}
+
+	@Test
+	public void testBackfillBudget() throws Exception {
+		BackfillCollector collector = new BackfillCollector();
+		collector.scheduleBackfill(NOW.minusMinutes(25),NOW,NOW);
+
+		long pollStarted = System.nanoTime() - TimeUnit.SECONDS.toNanos(CollectionLane.realtime.getPeriod());
+		collector.backfill(NOW,pollStarted);
+		assertEquals("check no chunk once the period is used",0,collector.windows.size());
+		assertEquals("check pending",NOW.minusMinutes(25),collector.getBackfillStart());
+	}
+
+	@Test
+	public void testWatermarkFollowsSamples() {
+		BackfillCollector collector = new BackfillCollector();
+		Map<String,DateTime> queried = new LinkedHashMap<String,DateTime>();
+		queried.put("Datastore",NOW.minusMinutes(10));
+		queried.put("ClusterComputeResource",NOW.minusMinutes(10));
+		Map<String,DateTime> sampled = new LinkedHashMap<String,DateTime>();
+		sampled.put("Datastore",NOW.minusMinutes(5));
+		collector.advanceWatermarks(queried,sampled,NOW);
+		assertEquals("check rollup pending after the latest sample",NOW.minusMinutes(5),collector.getTypeWatermark("Datastore"));
+		assertEquals("check type without samples",NOW,collector.getTypeWatermark("ClusterComputeResource"));
+		assertNull("check type not queried",collector.getTypeWatermark("HostSystem"));
+
+		// The pending rollup is returned by the next window
+		queried.clear();
+		queried.put("Datastore",NOW.minusMinutes(5));
+		sampled.clear();
+		sampled.put("Datastore",NOW.plusMinutes(5));
+		collector.advanceWatermarks(queried,sampled,NOW.plusMinutes(5));
+		assertEquals("check type rolled up",NOW.plusMinutes(5),collector.getTypeWatermark("Datastore"));
+		assertEquals("check other type kept",NOW,collector.getTypeWatermark("ClusterComputeResource"));
+	}
+
+	@Test
+	public void testMissingObjectDropped() {
+		Map<ManagedObjectReference,String> sources = new LinkedHashMap<ManagedObjectReference,String>();
+		sources.put(mor("VirtualMachine","vm-1"),"vcenter-web");
+		sources.put(mor("VirtualMachine","vm-2"),"vcenter-db");
+
+		ManagedObjectNotFound fault = new ManagedObjectNotFound();
+		fault.setObj(mor("VirtualMachine","vm-2"));
+		Map<ManagedObjectReference,String> remaining = VMWareMetricCollector.withoutMissingObject(sources,fault);
+		assertEquals("check remaining",1,remaining.size());
+		assertEquals("check remaining source","vcenter-web",remaining.values().iterator().next());
+
+		fault.setObj(mor("VirtualMachine","vm-3"));
+		assertNull("check object not in batch",VMWareMetricCollector.withoutMissingObject(sources,fault));
+		assertNull("check other fault",VMWareMetricCollector.withoutMissingObject(sources,new RuntimeFault()));
+	}
+
+	@Test
+	public void testMetadataUnchanged() throws Exception {
+		MetadataCollector collector = new MetadataCollector(entity(catalog(),"10m"),null);
+		collector.updateMetadata();
+		MetricCollectionJob job = collector.getJob();
+
+		collector.checkMetadata();
+		assertSame("check job kept",job,collector.getJob());
+		assertEquals("check counters fetched",2,collector.fetches.get());
+	}
+
+	@Test
+	public void testCatalogChanged() throws Exception {
+		File catalog = catalog();
+		MetadataCollector collector = new MetadataCollector(entity(catalog,"10m"),null);
+		collector.updateMetadata();
+		MetricCollectionJob job = collector.getJob();
+
+		// A catalog rewritten within the resolution of the modification time is only seen once it changes
+		String content = Files.toString(catalog,Charsets.UTF_8).replace("\"Datastore\"","\"ClusterComputeResource\"");
+		Files.write(content,catalog,Charsets.UTF_8);
+		assertTrue("check modified",catalog.setLastModified(catalog.lastModified() + 2000));
+
+		collector.checkMetadata();
+		assertNotSame("check job replaced",job,collector.getJob());
+		assertTrue("check added type",hasType(collector.getJob(),"ClusterComputeResource"));
+		assertTrue("check removed type",!hasType(collector.getJob(),"Datastore"));
+	}
+
+	@Test
+	public void testCountersChanged() throws Exception {
+		MetadataCollector collector = new MetadataCollector(entity(catalog(),"10m"),null);
+		collector.updateMetadata();
+		MetricCollectionJob job = collector.getJob();
+
+		collector.counters = counters(200);
+		collector.checkMetadata();
+		assertNotSame("check job replaced",job,collector.getJob());
+		assertEquals("check new counter",new Integer(200),collector.getJob().getMetadata().getNameMap().get("cpu.usage.AVERAGE"));
+	}
+
+	@Test
+	public void testUnparseableCatalog() throws Exception {
+		File catalog = catalog();
+		MetadataCollector collector = new MetadataCollector(entity(catalog,"10m"),null);
+		collector.updateMetadata();
+		MetricCollectionJob job = collector.getJob();
+
+		Files.write("{ not a catalog",catalog,Charsets.UTF_8);
+		assertTrue("check modified",catalog.setLastModified(catalog.lastModified() + 2000));
+		collector.counters = counters(200);
+		collector.checkMetadata();
+		assertSame("check job kept",job,collector.getJob());
+	}
+
+	@Test
+	public void testSingleRefresh() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		MetadataCollector collector = new MetadataCollector(entity(catalog(),"1ms"),executor);
+		collector.updateMetadata();
+
+		collector.fetching = new CountDownLatch(1);
+		collector.release = new CountDownLatch(1);
+		Thread.sleep(5);
+		collector.refreshMetadata();
+		assertTrue("check refresh started",collector.fetching.await(10,TimeUnit.SECONDS));
+
+		// The interval elapsed again while the first refresh is still running
+		Thread.sleep(5);
+		collector.refreshMetadata();
+		collector.release.countDown();
+		executor.shutdown();
+		assertTrue("check terminated",executor.awaitTermination(10,TimeUnit.SECONDS));
+		assertEquals("check single refresh",2,collector.fetches.get());
+	}
+
+	/**
+	 * Collector looking up containers by the last segment of their inventory path
+	 */
+	private static class PathCollector extends VMWareMetricCollector {
+		private final List<String> lookups = new ArrayList<String>();
+
+		PathCollector(MonitoredEntity configuration) {
+			super(new VMwareClient(URI.create("https://vcenter.example.com/sdk"),"user","password","vcenter"),null,
+					configuration,null,CollectionLane.realtime);
+		}
+
+		@Override
+		ManagedObjectReference findByInventoryPath(String path) {
+			lookups.add(path);
+			return path.endsWith("/missing") ? null : mor("Folder",path.substring(path.lastIndexOf('/') + 1));
+		}
+	}
+
+	@Test
+	public void testScopes() throws Exception {
+		PathCollector collector = new PathCollector(entityWith(catalog(),"\"inventoryPaths\":[\"Datacenter/vm/Web\"]"));
+		List<MORCatalogEntry> entries = MORCatalogFactory.create("test-catalog.json").getCatalog();
+		Map<List<String>,List<MORCatalogEntry>> scopes = collector.getScopes(entries,
+				ImmutableSet.of("VirtualMachine","HostSystem","Datastore"));
+
+		assertEquals("check scopes",3,scopes.size());
+		List<MORCatalogEntry> hosts = scopes.get(ImmutableList.of("Datacenter/host"));
+		assertEquals("check hosts walked from the datacenter",1,hosts.size());
+		assertEquals("check host entry","HostSystem",hosts.get(0).getType());
+		List<MORCatalogEntry> vms = scopes.get(ImmutableList.of("Datacenter/vm/Web"));
+		assertEquals("check virtual machines fall back to the entity paths","VirtualMachine",vms.get(0).getType());
+		List<MORCatalogEntry> datastores = scopes.get(ImmutableList.of("Datacenter/datastore"));
+		assertEquals("check entry paths","Datastore",datastores.get(0).getType());
+	}
+
+	@Test
+	public void testContainersResolvedOnce() throws Exception {
+		PathCollector collector = new PathCollector(entityWith(catalog(),"\"metadataRefreshInterval\":\"10m\""));
+		List<String> paths = ImmutableList.of("Datacenter/vm/Web","Datacenter/vm/missing");
+
+		List<ManagedObjectReference> containers = collector.getContainers(paths);
+		assertEquals("check missing path skipped",1,containers.size());
+		assertEquals("check container","Web",containers.get(0).getValue());
+		collector.getContainers(paths);
+		assertEquals("check paths looked up once",2,collector.lookups.size());
+
+		collector.forgetContainers(paths);
+		collector.getContainers(paths);
+		assertEquals("check paths looked up after a failure",4,collector.lookups.size());
+	}
+}
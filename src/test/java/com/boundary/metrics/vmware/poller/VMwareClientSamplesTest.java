@@ -0,0 +1,142 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static com.boundary.metrics.vmware.VMWareTestUtils.mor;
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.boundary.metrics.vmware.VMWareTestUtils;
+import com.boundary.metrics.vmware.client.metrics.Measurement;
+import com.boundary.metrics.vmware.util.TimeUtils;
+import com.vmware.vim25.PerfEntityMetric;
+import com.vmware.vim25.PerfEntityMetricCSV;
+import com.vmware.vim25.PerfMetricId;
+import com.vmware.vim25.PerfMetricIntSeries;
+import com.vmware.vim25.PerfMetricSeriesCSV;
+import com.vmware.vim25.PerfSampleInfo;
+import com.vmware.vim25.PerfStatsType;
+import com.vmware.vim25.PerfSummaryType;
+
+public class VMwareClientSamplesTest {
+
+	private static final DateTime FIRST = new DateTime(2014,10,1,12,0,20,DateTimeZone.UTC);
+
+	private VMwareClient client;
+	private VMWareMetadata metadata;
+
+	@Before
+	public void setUp() {
+		client = new VMwareClient(URI.create("https://localhost/sdk"),"user","password","esx1");
+		PerformanceCounterMetadata counters = new PerformanceCounterMetadata();
+		counters.put(VMWareTestUtils.buildPerfCounterInfo("cpu",6,new Integer(1),"usagemhz",PerfSummaryType.AVERAGE,PerfStatsType.RATE));
+		Map<String,MetricDefinition> metrics = new HashMap<String,MetricDefinition>();
+		metrics.put("cpu.usagemhz.AVERAGE",new MetricDefinitionBuilder().setMetric("SYSTEM_CPU_USAGE_MHZ").build());
+		Map<String,Map<String,MetricDefinition>> types = new HashMap<String,Map<String,MetricDefinition>>();
+		types.put("HostSystem",metrics);
+		metadata = new VMWareMetadata(counters,types);
+	}
+
+	@Test
+	public void testNormalSamples() {
+		PerfEntityMetric stats = new PerfEntityMetric();
+		stats.setEntity(mor("HostSystem","host-1"));
+		PerfMetricIntSeries series = new PerfMetricIntSeries();
+		series.setId(metricId(6));
+		for (int i = 0; i < 4; i++) {
+			PerfSampleInfo info = new PerfSampleInfo();
+			info.setInterval(20);
+			info.setTimestamp(TimeUtils.toXMLGregorianCalendar(FIRST.plusSeconds(i * 20)));
+			stats.getSampleInfo().add(info);
+		}
+		series.getValue().add(120L);
+		series.getValue().add(VMwareClient.UNSAMPLED);
+		series.getValue().add(-5L);
+		series.getValue().add(315L);
+		stats.getValue().add(series);
+
+		List<Measurement> measurements = new ArrayList<Measurement>();
+		client.extractMeasurements(measurements,"esx1","esx1",stats,metadata);
+		checkSamples(measurements);
+	}
+
+	@Test
+	public void testCSVSamples() {
+		PerfEntityMetricCSV stats = new PerfEntityMetricCSV();
+		stats.setEntity(mor("HostSystem","host-1"));
+		stats.setSampleInfoCSV("20,2014-10-01T12:00:20Z,20,2014-10-01T12:00:40Z,20,2014-10-01T12:01:00Z,20,2014-10-01T12:01:20Z");
+		PerfMetricSeriesCSV series = new PerfMetricSeriesCSV();
+		series.setId(metricId(6));
+		series.setValue("120,-1,-5,315");
+		stats.getValue().add(series);
+
+		List<Measurement> measurements = new ArrayList<Measurement>();
+		client.extractCSVMeasurements(measurements,"esx1","esx1",stats,metadata);
+		checkSamples(measurements);
+	}
+
+	@Test
+	public void testMalformedCSVSeries() {
+		PerfEntityMetricCSV stats = new PerfEntityMetricCSV();
+		stats.setEntity(mor("HostSystem","host-1"));
+		stats.setSampleInfoCSV("20,2014-10-01T12:00:20Z,20,2014-10-01T12:00:40Z,20,2014-10-01T12:01:00Z,20,2014-10-01T12:01:20Z");
+		PerfMetricSeriesCSV malformed = new PerfMetricSeriesCSV();
+		malformed.setId(metricId(6));
+		malformed.setValue("120,,-5,3-15");
+		stats.getValue().add(malformed);
+		PerfMetricSeriesCSV series = new PerfMetricSeriesCSV();
+		series.setId(metricId(6));
+		series.setValue("120,-1,-5,315");
+		stats.getValue().add(series);
+
+		List<Measurement> measurements = new ArrayList<Measurement>();
+		client.extractCSVMeasurements(measurements,"esx1","esx1",stats,metadata);
+		checkSamples(measurements);
+	}
+
+	/**
+	 * Checks that each sample is paired with its own time and that only the uncollected sample is skipped
+	 */
+	private static void checkSamples(List<Measurement> measurements) {
+		assertEquals("check measurements",3,measurements.size());
+		checkSample(measurements.get(0),FIRST,120L);
+		checkSample(measurements.get(1),FIRST.plusSeconds(40),-5L);
+		checkSample(measurements.get(2),FIRST.plusSeconds(60),315L);
+	}
+
+	private static void checkSample(Measurement measurement,DateTime time,long value) {
+		assertEquals("check metric","SYSTEM_CPU_USAGE_MHZ",measurement.getMetric());
+		assertEquals("check source","esx1",measurement.getSource());
+		assertEquals("check time",time.getMillis(),measurement.getTimestamp().getMillis());
+		assertEquals("check value",value,measurement.getMeasurement().longValue());
+	}
+
+	private static PerfMetricId metricId(int counterId) {
+		PerfMetricId id = new PerfMetricId();
+		id.setCounterId(counterId);
+		id.setInstance("");
+		return id;
+	}
+}
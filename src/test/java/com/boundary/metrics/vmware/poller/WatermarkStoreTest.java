@@ -0,0 +1,54 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.boundary.metrics.vmware.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WatermarkStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testMissingFile() {
+		WatermarkStore store = new WatermarkStore(new File(folder.getRoot(),"watermarks.properties"));
+		assertNull("check missing watermark",store.get("vcenter.realtime"));
+	}
+
+	@Test
+	public void testPersisted() {
+		File file = new File(folder.getRoot(),"watermarks.properties");
+		DateTime realtime = new DateTime(2014,10,1,12,0,20,DateTimeZone.UTC);
+		DateTime historical = new DateTime(2014,10,1,11,55,0,DateTimeZone.UTC);
+
+		WatermarkStore store = new WatermarkStore(file);
+		store.put("vcenter.realtime",realtime);
+		store.put("vcenter.historical",historical);
+
+		WatermarkStore reloaded = new WatermarkStore(file);
+		assertEquals("check realtime",realtime.getMillis(),reloaded.get("vcenter.realtime").getMillis());
+		assertEquals("check historical",historical.getMillis(),reloaded.get("vcenter.historical").getMillis());
+		assertNull("check other end point",reloaded.get("esxi.realtime"));
+	}
+}
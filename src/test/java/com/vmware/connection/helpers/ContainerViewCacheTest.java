@@ -0,0 +1,167 @@
+// Copyright 2014 Boundary, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.vmware.connection.helpers;
+
+import static com.boundary.metrics.vmware.VMWareTestUtils.mor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.boundary.metrics.vmware.poller.VMwareClient;
+import com.boundary.metrics.vmware.util.TimeUtils;
+import com.google.common.collect.ImmutableList;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ServiceContent;
+import com.vmware.vim25.UserSession;
+import com.vmware.vim25.VimPortType;
+
+public class ContainerViewCacheTest {
+
+	private int created = 0;
+	private int destroyed = 0;
+	private int logins = 0;
+	private int logouts = 0;
+	private DateTime loginTime = new DateTime();
+	private ContainerViewCache cache;
+
+	/**
+	 * Port that only implements the container view methods
+	 */
+	private final VimPortType vimPort = (VimPortType) Proxy.newProxyInstance(getClass().getClassLoader(),
+			new Class<?>[] {VimPortType.class},new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy,Method method,Object[] args) {
+					if (method.getName().equals("createContainerView")) {
+						return mor("ContainerView","session[1]" + (++created));
+					} else if (method.getName().equals("destroyView")) {
+						destroyed++;
+						return null;
+					} else if (method.getName().equals("logout")) {
+						logouts++;
+						return null;
+					}
+					throw new UnsupportedOperationException(method.getName());
+				}
+			});
+
+	/**
+	 * Client whose logins are counted, the sessions start at the login time of the test
+	 */
+	private final VMwareClient client = new VMwareClient(URI.create("https://localhost/sdk"),"user","password","test") {
+		@Override
+		public VimPortType getVimPort() {
+			return vimPort;
+		}
+
+		@Override
+		public ServiceContent getServiceContent() {
+			return new ServiceContent();
+		}
+
+		@Override
+		protected UserSession login() {
+			logins++;
+			UserSession session = new UserSession();
+			session.setLastActiveTime(TimeUtils.toXMLGregorianCalendar(loginTime));
+			return session;
+		}
+	};
+
+	@Before
+	public void setUp() {
+		cache = new ContainerViewCache(client);
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		ManagedObjectReference root = mor("Folder","group-d1");
+		ManagedObjectReference view = cache.getView(root,ImmutableList.of("VirtualMachine","HostSystem"));
+		assertSame("check reused",view,cache.getView(root,ImmutableList.of("HostSystem","VirtualMachine")));
+		assertNotSame("check other types",view,cache.getView(root,ImmutableList.of("Datastore")));
+		assertNotSame("check other container",view,cache.getView(mor("Folder","group-h4"),ImmutableList.of("VirtualMachine","HostSystem")));
+		assertEquals("check created",3,created);
+		assertEquals("check live views",3,cache.size());
+	}
+
+	@Test
+	public void testDestroyAll() throws Exception {
+		cache.getView(mor("Folder","group-d1"),ImmutableList.of("VirtualMachine"));
+		cache.getView(mor("Folder","group-d1"),ImmutableList.of("HostSystem"));
+		cache.destroyAll();
+		assertEquals("check destroyed",2,destroyed);
+		assertEquals("check live views",0,cache.size());
+	}
+
+	@Test
+	public void testLiveSessionKept() throws Exception {
+		client.connect();
+		ManagedObjectReference view = client.getViewCache().getView(mor("Folder","group-d1"),ImmutableList.of("VirtualMachine"));
+		client.connect();
+		assertEquals("check logins",1,logins);
+		assertEquals("check logouts",0,logouts);
+		assertSame("check view kept",view,client.getViewCache().getView(mor("Folder","group-d1"),ImmutableList.of("VirtualMachine")));
+		assertEquals("check created",1,created);
+	}
+
+	@Test
+	public void testStaleSessionReleased() throws Exception {
+		loginTime = new DateTime().minusMinutes(31);
+		client.connect();
+		client.getViewCache().getView(mor("Folder","group-d1"),ImmutableList.of("VirtualMachine"));
+		loginTime = new DateTime();
+		client.connect();
+		assertEquals("check logins",2,logins);
+		assertEquals("check logouts",1,logouts);
+		assertEquals("check destroyed",1,destroyed);
+		assertEquals("check live views",0,client.getViewCache().size());
+	}
+
+	@Test
+	public void testReconnectWaitsForSessionUsers() throws Exception {
+		loginTime = new DateTime().minusMinutes(31);
+		client.connect();
+		loginTime = new DateTime();
+		client.getSessionLock().readLock().lock();
+		Thread reconnect = new Thread() {
+			@Override
+			public void run() {
+				client.connect();
+			}
+		};
+		try {
+			reconnect.start();
+			reconnect.join(TimeUnit.SECONDS.toMillis(1));
+			assertEquals("check no login while in use",1,logins);
+			assertEquals("check no logout while in use",0,logouts);
+		} finally {
+			client.getSessionLock().readLock().unlock();
+		}
+		reconnect.join(TimeUnit.SECONDS.toMillis(10));
+		assertFalse("check reconnected",reconnect.isAlive());
+		assertEquals("check logins",2,logins);
+		assertEquals("check logouts",1,logouts);
+	}
+}